@@ -0,0 +1,178 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+/*
+ * Assets builds a synthetic base directory, with a face, index and pip 
+ * style made from generated images of a given resolution, and sets up the 
+ * Model to use it without any windows. It is shared by the benchmarks so 
+ * that they do not depend on a real card environment.
+ */
+package phillockett65.CardCreate2.benchmark;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import javafx.application.Platform;
+import phillockett65.CardCreate2.Cli;
+import phillockett65.CardCreate2.Model;
+
+
+public class Assets {
+
+    public static final String STYLE = "Bench";
+
+    private static final String[] SUITS = { "C", "D", "H", "S" };
+    private static final String[] CARDS = { "Joker", "A", "2", "3", "4", "5", "6", "7", "8", "9", "10", "J", "Q", "K" };
+
+    private static boolean initialized = false;
+
+    /**
+     * Draw a simple opaque shape on a transparent background.
+     * 
+     * @param width of the image in pixels.
+     * @param height of the image in pixels.
+     * @param seed used to vary the colour.
+     * @return the image.
+     */
+    private static BufferedImage createImage(int width, int height, int seed) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(new Color(Color.HSBtoRGB(seed / 17F, 0.8F, 0.8F)));
+        g.fillOval(width / 8, height / 8, width * 3 / 4, height * 3 / 4);
+        g.setColor(Color.BLACK);
+        g.drawRect(0, 0, width - 1, height - 1);
+        g.dispose();
+
+        return image;
+    }
+
+    private static void write(File directory, String name, BufferedImage image) throws IOException {
+        ImageIO.write(image, "png", new File(directory, name + ".png"));
+    }
+
+    /**
+     * Create a base directory holding the "Bench" style.
+     * 
+     * @param size of the longest side of the source images in pixels.
+     * @return the path of the base directory.
+     */
+    public static String create(int size) throws IOException {
+        final File base = Files.createTempDirectory("CardCreate2-" + size + "-").toFile();
+        final File faces = new File(base, "faces" + File.separator + STYLE);
+        final File indices = new File(base, "indices" + File.separator + STYLE);
+        final File pips = new File(base, "pips" + File.separator + STYLE);
+        faces.mkdirs();
+        indices.mkdirs();
+        pips.mkdirs();
+        new File(base, "boneyard").mkdirs();
+
+        final int faceWidth = size * 5 / 7;
+        final int indexWidth = Math.max(1, size / 2);
+
+        write(faces, "Watermark", createImage(faceWidth, size, 0));
+        write(new File(base, "boneyard"), "Back", createImage(faceWidth, size, 1));
+
+        for (int s = 0; s < SUITS.length; ++s) {
+            final String suit = SUITS[s];
+            write(pips, suit, createImage(size, size, s));
+            write(pips, suit + "S", createImage(size / 2, size / 2, s));
+            write(pips, suit + "F", createImage(size / 2, size / 2, s));
+
+            for (int c = 0; c < CARDS.length; ++c) {
+                write(indices, suit + CARDS[c], createImage(indexWidth, size, c));
+
+                // Only the court cards and the jokers have face images.
+                if ((c == 0) || (c > 10))
+                    write(faces, suit + CARDS[c], createImage(faceWidth, size, s * 14 + c));
+            }
+        }
+
+        return base.getPath();
+    }
+
+    /**
+     * Set up the Model to use the given base directory, without any 
+     * controllers or windows, for poker cards of the given width.
+     * 
+     * @param base path of the base directory created by create().
+     * @param cardWidth of the cards in pixels.
+     */
+    public static void setUpModel(String base, int cardWidth) {
+        Model model = Model.getInstance();
+
+        if (!initialized)
+            model.initialize();
+
+        model.setBaseDirectory(base);
+
+        if (!initialized)
+            model.initWithoutUI();
+        initialized = true;
+
+        model.setFaceStyle(STYLE);
+        model.setIndexStyle(STYLE);
+        model.setPipStyle(STYLE);
+
+        model.setHeadlessRendering(true);
+        model.setPokerCardSize();
+        model.setHeight(cardWidth * 7D / 5D);
+    }
+
+    /**
+     * Start the JavaFX toolkit, without any windows or display, as the 
+     * Generate and Write tasks report their progress on the Application 
+     * thread.
+     */
+    public static void startToolkit() {
+        try {
+            Cli.selectHeadlessPlatform();
+            Platform.startup(() -> {});
+            Platform.setImplicitExit(false);
+        } catch (IllegalStateException e) {
+            // Already started.
+        }
+    }
+
+    /**
+     * Delete a directory created by create(), along with its contents.
+     * 
+     * @param path of the directory.
+     */
+    public static void delete(String path) {
+        final File directory = new File(path);
+        final File[] files = directory.listFiles();
+        if (files != null)
+            for (File file : files)
+                if (file.isDirectory())
+                    delete(file.getPath());
+                else
+                    file.delete();
+
+        directory.delete();
+    }
+
+}
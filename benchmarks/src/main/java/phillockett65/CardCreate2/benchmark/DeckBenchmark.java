@@ -0,0 +1,124 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+/*
+ * DeckBenchmark measures generating a full deck end to end, drawing every 
+ * card off-screen then masking, encoding and saving it as a PNG file, for 
+ * different card sizes and source image resolutions. The cards are 
+ * generated one after another on the benchmark thread.
+ */
+package phillockett65.CardCreate2.benchmark;
+
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import phillockett65.CardCreate2.CardMask;
+import phillockett65.CardCreate2.Encoder;
+import phillockett65.CardCreate2.FileOutput;
+import phillockett65.CardCreate2.Generate;
+import phillockett65.CardCreate2.GenerationSpec;
+import phillockett65.CardCreate2.Model;
+import phillockett65.CardCreate2.Write;
+import phillockett65.CardCreate2.sample.Default;
+
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DeckBenchmark {
+
+    // Poker card widths, up to Default.MAX_WIDTH.
+    @Param({ "380", "1520", "3800" })
+    public int cardWidth;
+
+    @Param({ "256", "1024" })
+    public int sourceSize;
+
+    private final Model model = Model.getInstance();
+    private String base;
+    private String output;
+    private CardMask mask;
+    private Encoder encoder;
+    private FileOutput files;
+
+    @Setup
+    public void setUp() throws Exception {
+        Assets.startToolkit();
+        base = Assets.create(sourceSize);
+        output = Files.createTempDirectory("CardCreate2-deck-").toFile().getPath();
+        Assets.setUpModel(base, cardWidth);
+        model.setOutputDirectory(output);
+
+        final int width = (int)model.getWidth();
+        final int height = (int)model.getHeight();
+        mask = CardMask.getMask(width, height, model.getArcWidthPX(), model.getArcHeightPX());
+        encoder = model.getEncoder();
+
+        String[] paths = new String[Default.DECK_COUNT.getInt()];
+        for (int id = 0; id < paths.length; ++id)
+            paths[id] = model.getOutputImagePath(id);
+        files = new FileOutput(paths);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Assets.delete(output);
+        Assets.delete(base);
+    }
+
+    @Benchmark
+    public int generateDeck() throws Exception {
+        int saved = 0;
+
+        model.startGenerate();
+        final GenerationSpec spec = model.getGenerationSpec();
+        for (int id = 0; id < Default.DECK_COUNT.getInt(); ++id) {
+            Generate generate = new Generate(spec, id, 0L, spec.getJokerDefaults(spec.getSuit(id)));
+            generate.run();
+            generate.get();
+
+            Write write = new Write(0L, mask, encoder, generate.getImage(), files, id);
+            write.run();
+            write.get();
+
+            if (write.isSaved())
+                saved++;
+        }
+        model.finishGenerate();
+
+        return saved;
+    }
+
+}
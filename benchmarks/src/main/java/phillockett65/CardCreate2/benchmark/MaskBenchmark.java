@@ -0,0 +1,91 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+/*
+ * MaskBenchmark measures cropping the corners of a card with a CardMask, 
+ * a row at a time as the encoders read it, for different card sizes.
+ */
+package phillockett65.CardCreate2.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import phillockett65.CardCreate2.CardMask;
+import phillockett65.CardCreate2.RowSource;
+import phillockett65.CardCreate2.sample.Default;
+
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MaskBenchmark {
+
+    // Poker card widths, up to Default.MAX_WIDTH.
+    @Param({ "380", "1520", "3800" })
+    public int cardWidth;
+
+    private RowSource masked;
+    private int[] row;
+
+    @Setup
+    public void setUp() {
+        final int width = cardWidth;
+        final int height = cardWidth * 7 / 5;
+        final double arc = Default.RADIUS.getFloat() * width / Default.WIDTH.getFloat();
+
+        Random random = new Random(cardWidth);
+        final int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; ++i)
+            pixels[i] = random.nextInt();
+
+        RowSource source = new RowSource() {
+            public int getWidth() { return width; }
+            public int getHeight() { return height; }
+            public void getRow(int y, int[] out) { System.arraycopy(pixels, y * width, out, 0, width); }
+        };
+
+        masked = source.masked(CardMask.getMask(width, height, arc, arc));
+        row = new int[width];
+    }
+
+    @Benchmark
+    public void maskCard(Blackhole blackhole) {
+        for (int y = 0; y < masked.getHeight(); ++y) {
+            masked.getRow(y, row);
+            blackhole.consume(row);
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+/*
+ * PayloadBenchmark measures drawing card items with their Payloads: the 
+ * standard pips of a ten with MultiPayload.drawCard() and a court card face 
+ * with ImagePayload.drawCard(), for different card sizes and source image 
+ * resolutions.
+ */
+package phillockett65.CardCreate2.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.scene.image.Image;
+import phillockett65.CardCreate2.BufferedGraphics;
+import phillockett65.CardCreate2.GenerationSpec;
+import phillockett65.CardCreate2.Model;
+import phillockett65.CardCreate2.Utils;
+
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadBenchmark {
+
+    // Poker card widths, up to Default.MAX_WIDTH.
+    @Param({ "380", "1520", "3800" })
+    public int cardWidth;
+
+    @Param({ "64", "256", "1024" })
+    public int sourceSize;
+
+    private static final int HEARTS = 2;
+    private static final int TEN = 10;
+    private static final int KING = 13;
+
+    private final Model model = Model.getInstance();
+    private String base;
+    private BufferedGraphics gc;
+    private GenerationSpec spec;
+
+    private Image pip;
+    private Image rotatedPip;
+    private Image face;
+    private Image rotatedFace;
+
+    @Setup
+    public void setUp() throws Exception {
+        base = Assets.create(sourceSize);
+        Assets.setUpModel(base, cardWidth);
+
+        model.startGenerate();
+        spec = model.getGenerationSpec();
+        gc = new BufferedGraphics(new BufferedImage(spec.getImageWidth(), spec.getImageHeight(), 
+            BufferedImage.TYPE_INT_ARGB));
+
+        final String pipPath = model.getStandardPipImagePath(HEARTS);
+        pip = Utils.loadImage(pipPath);
+        rotatedPip = Utils.loadRotatedImage(pipPath);
+
+        final String facePath = model.getFaceImagePath(HEARTS, KING);
+        face = Utils.loadImage(facePath);
+        rotatedFace = Utils.loadRotatedImage(facePath);
+    }
+
+    @TearDown
+    public void tearDown() {
+        model.finishGenerate();
+        Assets.delete(base);
+    }
+
+    @Benchmark
+    public BufferedGraphics drawStandardPips() {
+        spec.drawCardStandardPip(gc, pip, rotatedPip, TEN);
+
+        return gc;
+    }
+
+    @Benchmark
+    public BufferedGraphics drawFace() {
+        spec.drawCardFace(gc, face, rotatedFace);
+
+        return gc;
+    }
+
+}
@@ -30,6 +30,7 @@ import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
 import javafx.scene.control.Spinner;
@@ -73,6 +74,8 @@ public class AdditionalController {
         initializeModifySelectedCardItem();
         initializeCardItemPriority();
         initializeJokers();
+        initializeGeneration();
+        initializeOutput();
     }
 
     /**
@@ -93,6 +96,19 @@ public class AdditionalController {
         showGuideBoxCheckBox.setSelected(model.isShowGuideBox());
 
         borderlessCheckBox.setSelected(model.isBorderlessJokers());
+
+        headlessCheckBox.setSelected(model.isHeadlessRendering());
+        incrementalCheckBox.setSelected(model.isIncremental());
+        skipIdenticalCheckBox.setSelected(model.isSkipIdenticalWrites());
+        formatChoiceBox.setValue(model.getFormat());
+        filterChoiceBox.setValue(model.getFilter());
+        syncEncoderControls();
+
+        outputModeChoiceBox.setValue(model.getOutputMode());
+        packingChoiceBox.setValue(model.getAtlasPacking());
+        sidecarChoiceBox.setValue(model.getAtlasSidecar());
+        syncOutputControls();
+        syncSizeCheckBoxes();
     }
 
 
@@ -384,4 +400,302 @@ public class AdditionalController {
         borderlessCheckBox.setTooltip(new Tooltip("Don't use borders on Joker images"));
     }
 
+
+
+    /************************************************************************
+     * Support code for "Generation" panel. 
+     */
+
+    @FXML
+    private Label renderThreadsLabel;
+
+    @FXML
+    private Spinner<Integer> renderThreadsSpinner;
+
+    @FXML
+    private Button renderThreadsButton;
+
+    @FXML
+    private Label writeThreadsLabel;
+
+    @FXML
+    private Spinner<Integer> writeThreadsSpinner;
+
+    @FXML
+    private Button writeThreadsButton;
+
+    @FXML
+    private CheckBox headlessCheckBox;
+
+    @FXML
+    private Label formatLabel;
+
+    @FXML
+    private ChoiceBox<String> formatChoiceBox;
+
+    @FXML
+    private Label compressionLabel;
+
+    @FXML
+    private Spinner<Integer> compressionSpinner;
+
+    @FXML
+    private Button compressionButton;
+
+    @FXML
+    private Label filterLabel;
+
+    @FXML
+    private ChoiceBox<String> filterChoiceBox;
+
+    @FXML
+    private CheckBox incrementalCheckBox;
+
+    @FXML
+    private CheckBox skipIdenticalCheckBox;
+
+    @FXML
+    void renderThreadsButtonActionPerformed(ActionEvent event) {
+        model.resetRenderThreadsSVF();
+    }
+
+    @FXML
+    void writeThreadsButtonActionPerformed(ActionEvent event) {
+        model.resetWriteThreadsSVF();
+    }
+
+    @FXML
+    void paddingButtonActionPerformed(ActionEvent event) {
+        model.resetPaddingSVF();
+    }
+
+    @FXML
+    void compressionButtonActionPerformed(ActionEvent event) {
+        model.resetCompressionSVF();
+    }
+
+    @FXML
+    void headlessCheckBoxActionPerformed(ActionEvent event) {
+        model.setHeadlessRendering(headlessCheckBox.isSelected());
+    }
+
+    @FXML
+    void incrementalCheckBoxActionPerformed(ActionEvent event) {
+        model.setIncremental(incrementalCheckBox.isSelected());
+    }
+
+    @FXML
+    void skipIdenticalCheckBoxActionPerformed(ActionEvent event) {
+        model.setSkipIdenticalWrites(skipIdenticalCheckBox.isSelected());
+    }
+
+    /**
+     * Only enable the PNG settings when saving as PNG.
+     */
+    private void syncEncoderControls() {
+        final boolean png = model.getFormat().equals(Model.PNG_FORMAT);
+
+        compressionLabel.setDisable(!png);
+        compressionSpinner.setDisable(!png);
+        compressionButton.setDisable(!png);
+        filterLabel.setDisable(!png);
+        filterChoiceBox.setDisable(!png);
+    }
+
+    /**
+     * Initialize "Generation" panel.
+     */
+    private void initializeGeneration() {
+
+        renderThreadsSpinner.setValueFactory(model.getRenderThreadsSVF());
+        writeThreadsSpinner.setValueFactory(model.getWriteThreadsSVF());
+
+        renderThreadsSpinner.valueProperty().addListener( (v, oldValue, newValue) -> {
+            model.setRenderThreads(newValue);
+        });
+
+        writeThreadsSpinner.valueProperty().addListener( (v, oldValue, newValue) -> {
+            model.setWriteThreads(newValue);
+        });
+
+        renderThreadsLabel.setTooltip(new Tooltip("Number of threads used to draw the cards (default: number of cores)"));
+        renderThreadsSpinner.setTooltip(new Tooltip("Set the number of threads used to draw the cards"));
+        renderThreadsButton.setTooltip(new Tooltip("Reset the number of render threads to the number of cores"));
+
+        writeThreadsLabel.setTooltip(new Tooltip("Number of threads used to encode and save the cards (default: number of cores)"));
+        writeThreadsSpinner.setTooltip(new Tooltip("Set the number of threads used to encode and save the cards"));
+        writeThreadsButton.setTooltip(new Tooltip("Reset the number of write threads to the number of cores"));
+
+        formatChoiceBox.setItems(model.getFormatList());
+        formatChoiceBox.setValue(model.getFormat());
+        formatChoiceBox.getSelectionModel().selectedItemProperty().addListener( (v, oldValue, newValue) -> {
+            model.setFormat(newValue);
+            syncEncoderControls();
+        });
+
+        compressionSpinner.setValueFactory(model.getCompressionSVF());
+
+        filterChoiceBox.setItems(model.getFilterList());
+        filterChoiceBox.setValue(model.getFilter());
+        filterChoiceBox.getSelectionModel().selectedItemProperty().addListener( (v, oldValue, newValue) -> {
+            model.setFilter(newValue);
+        });
+
+        syncEncoderControls();
+
+        formatLabel.setTooltip(new Tooltip("Format used to save the cards"));
+        formatChoiceBox.setTooltip(new Tooltip("Select PNG, or uncompressed PAM for images that are passed on to other tools"));
+        compressionLabel.setTooltip(new Tooltip("PNG deflate level, from 0 (fastest) to 9 (smallest files)"));
+        compressionSpinner.setTooltip(new Tooltip("Set the PNG compression level, low for proofs and 9 for release"));
+        compressionButton.setTooltip(new Tooltip("Reset the PNG compression level to the default"));
+        filterLabel.setTooltip(new Tooltip("PNG row filter used before compression"));
+        filterChoiceBox.setTooltip(new Tooltip("Select a PNG row filter, None is fastest and Adaptive usually gives the smallest files"));
+
+        headlessCheckBox.setSelected(model.isHeadlessRendering());
+        headlessCheckBox.setTooltip(new Tooltip("Draw the cards using Java2D, avoiding the need to take snapshots on the Application thread"));
+
+        incrementalCheckBox.setSelected(model.isIncremental());
+        incrementalCheckBox.setTooltip(new Tooltip("Only generate the cards whose settings, source images or saved files have changed since they were last generated"));
+
+        skipIdenticalCheckBox.setSelected(model.isSkipIdenticalWrites());
+        skipIdenticalCheckBox.setTooltip(new Tooltip("Don't save a card if its pixels are identical to the card already saved"));
+    }
+
+
+
+    /************************************************************************
+     * Support code for "Output" panel. 
+     */
+
+    @FXML
+    private Label outputModeLabel;
+
+    @FXML
+    private ChoiceBox<String> outputModeChoiceBox;
+
+    @FXML
+    private Label paddingLabel;
+
+    @FXML
+    private Spinner<Integer> paddingSpinner;
+
+    @FXML
+    private Button paddingButton;
+
+    @FXML
+    private Label packingLabel;
+
+    @FXML
+    private ChoiceBox<String> packingChoiceBox;
+
+    @FXML
+    private Label sidecarLabel;
+
+    @FXML
+    private ChoiceBox<String> sidecarChoiceBox;
+
+    @FXML
+    private Label sizesLabel;
+
+    @FXML
+    private CheckBox pokerSizeCheckBox;
+
+    @FXML
+    private CheckBox bridgeSizeCheckBox;
+
+    @FXML
+    private CheckBox freeSizeCheckBox;
+
+    @FXML
+    private CheckBox mpcSizeCheckBox;
+
+    @FXML
+    void pokerSizeCheckBoxActionPerformed(ActionEvent event) {
+        model.setGenerationSize(Model.POKER_SIZE, pokerSizeCheckBox.isSelected());
+    }
+
+    @FXML
+    void bridgeSizeCheckBoxActionPerformed(ActionEvent event) {
+        model.setGenerationSize(Model.BRIDGE_SIZE, bridgeSizeCheckBox.isSelected());
+    }
+
+    @FXML
+    void freeSizeCheckBoxActionPerformed(ActionEvent event) {
+        model.setGenerationSize(Model.FREE_SIZE, freeSizeCheckBox.isSelected());
+    }
+
+    @FXML
+    void mpcSizeCheckBoxActionPerformed(ActionEvent event) {
+        model.setGenerationSize(Model.MPC_SIZE, mpcSizeCheckBox.isSelected());
+    }
+
+    /**
+     * Select the card sizes to generate from the model.
+     */
+    private void syncSizeCheckBoxes() {
+        pokerSizeCheckBox.setSelected(model.isGenerationSize(Model.POKER_SIZE));
+        bridgeSizeCheckBox.setSelected(model.isGenerationSize(Model.BRIDGE_SIZE));
+        freeSizeCheckBox.setSelected(model.isGenerationSize(Model.FREE_SIZE));
+        mpcSizeCheckBox.setSelected(model.isGenerationSize(Model.MPC_SIZE));
+    }
+
+    /**
+     * Only enable the atlas settings when saving as an atlas.
+     */
+    private void syncOutputControls() {
+        final boolean atlas = model.getOutputMode().equals(Model.ATLAS_OUTPUT);
+
+        paddingLabel.setDisable(!atlas);
+        paddingSpinner.setDisable(!atlas);
+        paddingButton.setDisable(!atlas);
+        packingLabel.setDisable(!atlas);
+        packingChoiceBox.setDisable(!atlas);
+        sidecarLabel.setDisable(!atlas);
+        sidecarChoiceBox.setDisable(!atlas);
+    }
+
+    /**
+     * Initialize "Output" panel.
+     */
+    private void initializeOutput() {
+        outputModeChoiceBox.setItems(model.getOutputModeList());
+        outputModeChoiceBox.setValue(model.getOutputMode());
+        outputModeChoiceBox.getSelectionModel().selectedItemProperty().addListener( (v, oldValue, newValue) -> {
+            model.setOutputMode(newValue);
+            syncOutputControls();
+        });
+
+        paddingSpinner.setValueFactory(model.getPaddingSVF());
+
+        packingChoiceBox.setItems(model.getPackingList());
+        packingChoiceBox.setValue(model.getAtlasPacking());
+        packingChoiceBox.getSelectionModel().selectedItemProperty().addListener( (v, oldValue, newValue) -> {
+            model.setAtlasPacking(newValue);
+        });
+
+        sidecarChoiceBox.setItems(model.getSidecarList());
+        sidecarChoiceBox.setValue(model.getAtlasSidecar());
+        sidecarChoiceBox.getSelectionModel().selectedItemProperty().addListener( (v, oldValue, newValue) -> {
+            model.setAtlasSidecar(newValue);
+        });
+
+        syncOutputControls();
+        syncSizeCheckBoxes();
+
+        outputModeLabel.setTooltip(new Tooltip("How the generated cards are saved"));
+        outputModeChoiceBox.setTooltip(new Tooltip("Save each card as a separate file, combine every card into a single atlas image, or add each card to a ZIP archive"));
+        paddingLabel.setTooltip(new Tooltip("Number of transparent pixels around each card in the atlas"));
+        paddingSpinner.setTooltip(new Tooltip("Set the padding around each card in the atlas"));
+        paddingButton.setTooltip(new Tooltip("Reset the atlas padding to the default"));
+        packingLabel.setTooltip(new Tooltip("How the cards are laid out in the atlas"));
+        packingChoiceBox.setTooltip(new Tooltip("Grid lays the suits out in rows, Power of Two finds the smallest power-of-two sized atlas"));
+        sidecarLabel.setTooltip(new Tooltip("Format of the file giving the position of each card in the atlas"));
+        sidecarChoiceBox.setTooltip(new Tooltip("Select JSON or CSV for the atlas sidecar file"));
+        sizesLabel.setTooltip(new Tooltip("Card sizes to generate the deck at, each in its own sub-directory (default: the current size only)"));
+        pokerSizeCheckBox.setTooltip(new Tooltip("Generate the deck as Poker cards"));
+        bridgeSizeCheckBox.setTooltip(new Tooltip("Generate the deck as Bridge cards"));
+        freeSizeCheckBox.setTooltip(new Tooltip("Generate the deck using the freely set card width"));
+        mpcSizeCheckBox.setTooltip(new Tooltip("Generate the deck as MPC cards"));
+    }
+
 }
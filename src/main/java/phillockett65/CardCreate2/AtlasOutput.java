@@ -0,0 +1,405 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * AtlasOutput combines every card into a single sprite sheet image, with 
+ * padding around each card, and a sidecar file giving the rectangle of each 
+ * card keyed by its file name. The cards are laid out either in a grid of 
+ * suits, or in whichever grid gives the smallest power-of-two sized image.
+ * The cards are held in a temporary file as they are written, and the atlas 
+ * is encoded from it a row at a time once every card has been written, so 
+ * the whole atlas is never held in memory. The temporary files are kept in 
+ * the output directory, so they are on the same file system as the atlas 
+ * and the finished atlas is renamed into place.
+ */
+package phillockett65.CardCreate2;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import phillockett65.CardCreate2.sample.Default;
+import phillockett65.Debug.Debug;
+
+
+public class AtlasOutput implements CardOutput {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    public static final String GRID_PACKING = "Grid";
+    public static final String POWER_OF_TWO_PACKING = "Power of Two";
+
+    public static final String JSON_SIDECAR = "JSON";
+    public static final String CSV_SIDECAR = "CSV";
+
+    // Largest atlas, in pixels, that image readers can hold in one int[].
+    public static final long MAX_PIXELS = Integer.MAX_VALUE;
+
+    private static final String NAME = "atlas";
+
+    // Maximum number of bytes of card rows written to the temporary file at 
+    // once.
+    private static final int BLOCK_SIZE = 256 * 1024;
+
+    private final String directory;
+    private final String[] names;
+    private final String sidecar;
+    private final Encoder encoder;
+
+    private final int cardWidth;
+    private final int cardHeight;
+    private final int padding;
+    private final int columns;
+    private final int width;
+    private final int height;
+
+    private final Path cardsPath;
+    private final FileChannel cards;
+
+
+    /**
+     * AtlasOutput constructor.
+     * 
+     * @param directory to save the atlas and sidecar files in.
+     * @param names of the cards, indexed by position in the deck.
+     * @param cardWidth width of each card.
+     * @param cardHeight height of each card.
+     * @param padding number of transparent pixels around each card.
+     * @param packing either GRID_PACKING or POWER_OF_TWO_PACKING.
+     * @param sidecar either JSON_SIDECAR or CSV_SIDECAR.
+     * @param encoder used to encode the atlas.
+     * @throws IOException if the atlas would be larger than MAX_PIXELS or 
+     * the temporary file could not be created.
+     */
+    public AtlasOutput(String directory, String[] names, int cardWidth, int cardHeight, 
+        int padding, String packing, String sidecar, Encoder encoder) throws IOException {
+        this.directory = directory;
+        this.names = names;
+        this.sidecar = sidecar;
+        this.encoder = encoder;
+        this.cardWidth = cardWidth;
+        this.cardHeight = cardHeight;
+        this.padding = padding;
+
+        final int count = names.length;
+        final long w;
+        final long h;
+        if (packing.equals(POWER_OF_TWO_PACKING)) {
+            columns = getPowerOfTwoColumns(count);
+            w = nextPowerOfTwo(getSpan(columns, cardWidth));
+            h = nextPowerOfTwo(getSpan(getRows(count, columns), cardHeight));
+        } else {
+            columns = Default.CARD_COUNT.getInt();
+            w = getSpan(columns, cardWidth);
+            h = getSpan(getRows(count, columns), cardHeight);
+        }
+
+        if (!isValidSize(w, h))
+            throw new IOException("An atlas of " + w + " x " + h + " pixels is too large, " + 
+                "use a smaller card size, grid packing or separate files");
+
+        width = (int)w;
+        height = (int)h;
+
+        Debug.trace(DD, "AtlasOutput(" + width + " x " + height + ", " + columns + " columns)");
+        cardsPath = Files.createTempFile(Paths.get(directory), NAME, ".tmp");
+        cards = FileChannel.open(cardsPath, StandardOpenOption.READ, StandardOpenOption.WRITE, 
+            StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+
+    /************************************************************************
+     * Support code for the layout.
+     */
+
+    /**
+     * @return true if an atlas of the given size can be encoded and read 
+     * back, false otherwise.
+     */
+    static boolean isValidSize(long width, long height) {
+        if (width < 1 || height < 1 || width > MAX_PIXELS || height > MAX_PIXELS)
+            return false;
+
+        return width * height <= MAX_PIXELS;
+    }
+
+    private static int getRows(int count, int columns) {
+        return (count + columns - 1) / columns;
+    }
+
+    /**
+     * @return the number of pixels needed for the given number of cards of 
+     * the given size, including the padding.
+     */
+    private long getSpan(int cards, int size) {
+        return (long)cards * (size + padding) + padding;
+    }
+
+    static long nextPowerOfTwo(long value) {
+        long power = 1;
+        while (power < value)
+            power <<= 1;
+
+        return power;
+    }
+
+    /**
+     * Find the number of columns that gives the smallest power-of-two sized 
+     * atlas, preferring the squarest atlas when the areas are equal. Layouts 
+     * that are too large are only chosen if every layout is too large.
+     * 
+     * @param count number of cards.
+     * @return the number of columns.
+     */
+    private int getPowerOfTwoColumns(int count) {
+        int best = count;
+        long bestArea = Long.MAX_VALUE;
+        long bestRatio = Long.MAX_VALUE;
+
+        for (int c = 1; c <= count; ++c) {
+            final long w = nextPowerOfTwo(getSpan(c, cardWidth));
+            final long h = nextPowerOfTwo(getSpan(getRows(count, c), cardHeight));
+            if (!isValidSize(w, h))
+                continue;
+
+            final long area = w * h;
+            final long ratio = Math.max(w, h) / Math.min(w, h);
+
+            if (area < bestArea || (area == bestArea && ratio < bestRatio)) {
+                best = c;
+                bestArea = area;
+                bestRatio = ratio;
+            }
+        }
+
+        return best;
+    }
+
+    public int getX(int id) { return padding + (id % columns) * (cardWidth + padding); }
+    public int getY(int id) { return padding + (id / columns) * (cardHeight + padding); }
+
+    /**
+     * @return the position in the temporary file of a row of a card.
+     */
+    private long getOffset(int id, int row) {
+        return (((long)id * cardHeight) + row) * cardWidth * 4;
+    }
+
+
+    /************************************************************************
+     * Support code for the CardOutput interface.
+     */
+
+    /**
+     * Save the card to its place in the temporary file. Cards never overlap, 
+     * so several cards can be saved at once.
+     */
+    @Override
+    public void write(int id, RowSource image, Encoder encoder) throws IOException {
+        final int w = Math.min(image.getWidth(), cardWidth);
+        final int h = Math.min(image.getHeight(), cardHeight);
+        final int rowBytes = cardWidth * 4;
+        final int rows = Math.max(1, Math.min(h, BLOCK_SIZE / rowBytes));
+
+        int[] row = new int[image.getWidth()];
+        ByteBuffer block = ByteBuffer.allocate(rows * rowBytes);
+        IntBuffer ints = block.asIntBuffer();
+
+        for (int first = 0; first < h; first += rows) {
+            final int end = Math.min(first + rows, h);
+
+            // Leave any columns the image does not fill transparent.
+            if (w < cardWidth)
+                Arrays.fill(block.array(), (byte)0);
+
+            ints.clear();
+            for (int r = first; r < end; ++r) {
+                image.getRow(r, row);
+                ints.position((r - first) * cardWidth);
+                ints.put(row, 0, w);
+            }
+
+            block.clear();
+            block.limit((end - first) * rowBytes);
+            long position = getOffset(id, first);
+            while (block.hasRemaining())
+                position += cards.write(block, position);
+        }
+    }
+
+    /**
+     * Read a row of the atlas from the temporary file. Cards that were never 
+     * written are left transparent.
+     * 
+     * @param y index of the row.
+     * @param row to fill with width ARGB values.
+     * @param buffer used to read a row of a card.
+     */
+    private void getRow(int y, int[] row, ByteBuffer buffer) throws IOException {
+        Arrays.fill(row, 0, width, 0);
+
+        final int span = cardHeight + padding;
+        if (y < padding)
+            return;
+
+        final int cardRow = (y - padding) / span;
+        final int r = (y - padding) % span;
+        if (r >= cardHeight)
+            return;
+
+        for (int c = 0; c < columns; ++c) {
+            final int id = cardRow * columns + c;
+            if (id >= names.length)
+                break;
+
+            buffer.clear();
+            long position = getOffset(id, r);
+            while (buffer.hasRemaining()) {
+                final int read = cards.read(buffer, position);
+                if (read < 0)
+                    break;
+                position += read;
+            }
+
+            // Unwritten parts of the file read as zero, i.e. transparent.
+            buffer.flip();
+            buffer.asIntBuffer().get(row, getX(id), buffer.remaining() / 4);
+        }
+    }
+
+    /**
+     * Encode the atlas as a single file and write the sidecar file.
+     */
+    @Override
+    public void close() throws IOException {
+        final String imageName = NAME + "." + encoder.getExtension();
+        final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(cardWidth * 4));
+
+        RowSource atlas = new RowSource() {
+            public int getWidth() { return width; }
+            public int getHeight() { return height; }
+            public void getRow(int y, int[] row) {
+                try {
+                    AtlasOutput.this.getRow(y, row, buffers.get());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+
+        // Encode to a temporary file so that a failure does not leave a 
+        // partial atlas in place of a previous one.
+        final Path imagePath = Paths.get(directory, imageName);
+        final Path encodedPath = Files.createTempFile(Paths.get(directory), NAME, ".part");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(encodedPath), 64 * 1024)) {
+                encoder.encode(atlas, out);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            try {
+                Files.move(encodedPath, imagePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(encodedPath, imagePath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(encodedPath);
+            cards.close();
+        }
+
+        if (sidecar.equals(CSV_SIDECAR))
+            writeCsv();
+        else
+            writeJson(imageName);
+    }
+
+    /**
+     * Discard the cards written so far, as the atlas is only written by 
+     * close().
+     */
+    @Override
+    public void abort() {
+        try {
+            cards.close();
+        } catch (IOException e) {
+            Debug.major(DD, "abort() - Failed deleting " + cardsPath + ": " + e);
+        }
+    }
+
+    /**
+     * Write the sidecar file as CSV, one line per card.
+     */
+    private void writeCsv() throws IOException {
+        try (FileWriter writer = new FileWriter(directory + File.separator + NAME + ".csv"); BufferedWriter bw = new BufferedWriter(writer)) {
+            bw.write("name,x,y,width,height" + System.lineSeparator());
+
+            for (int id = 0; id < names.length; ++id)
+                bw.write(names[id] + "," + getX(id) + "," + getY(id) + "," + 
+                    cardWidth + "," + cardHeight + System.lineSeparator());
+        }
+    }
+
+    /**
+     * Write the sidecar file as JSON, with the size of the atlas and an 
+     * object of card rectangles keyed by name.
+     * 
+     * @param imageName file name of the atlas image.
+     */
+    private void writeJson(String imageName) throws IOException {
+        try (FileWriter writer = new FileWriter(directory + File.separator + NAME + ".json"); BufferedWriter bw = new BufferedWriter(writer)) {
+            final String nl = System.lineSeparator();
+
+            bw.write("{" + nl);
+            bw.write("  \"image\": \"" + imageName + "\"," + nl);
+            bw.write("  \"width\": " + width + "," + nl);
+            bw.write("  \"height\": " + height + "," + nl);
+            bw.write("  \"cards\": {" + nl);
+
+            for (int id = 0; id < names.length; ++id) {
+                bw.write("    \"" + names[id] + "\": { \"x\": " + getX(id) + ", \"y\": " + getY(id) + 
+                    ", \"width\": " + cardWidth + ", \"height\": " + cardHeight + " }");
+                bw.write((id < names.length - 1 ? "," : "") + nl);
+            }
+
+            bw.write("  }" + nl);
+            bw.write("}" + nl);
+        }
+    }
+
+}
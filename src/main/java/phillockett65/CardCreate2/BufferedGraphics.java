@@ -0,0 +1,215 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * BufferedGraphics implements CardGraphics by drawing straight into a Java2D 
+ * BufferedImage. Unlike a Canvas, the image does not need to be snapshot on 
+ * the Application thread, so the cards can be drawn on any thread.
+ */
+package phillockett65.CardCreate2;
+
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+
+public class BufferedGraphics implements CardGraphics {
+
+    private final BufferedImage image;
+    private final Graphics2D g2d;
+    private final IconCache icons;
+
+    private java.awt.Color fill = java.awt.Color.BLACK;
+    private java.awt.Color stroke = java.awt.Color.BLACK;
+
+    /**
+     * Draw on an existing image, such as one taken from an ImagePool.
+     * 
+     * @param image to draw on.
+     */
+    public BufferedGraphics(BufferedImage image) {
+        this(image, null);
+    }
+
+    /**
+     * Draw on an existing image, taking the scaled images from a cache.
+     * 
+     * @param image to draw on.
+     * @param icons cache of scaled images, may be null.
+     */
+    public BufferedGraphics(BufferedImage image, IconCache icons) {
+        this.image = image;
+        this.icons = icons;
+        g2d = image.createGraphics();
+
+        // Match the smoothing used by the Canvas.
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+    }
+
+    /**
+     * Release the drawing resources and return the finished image.
+     * 
+     * @return the image that has been drawn on.
+     */
+    public BufferedImage getImage() {
+        g2d.dispose();
+
+        return image;
+    }
+
+
+    /**
+     * Convert a JavaFX colour to the equivalent AWT colour.
+     * 
+     * @param colour to convert.
+     * @return the AWT colour.
+     */
+    private static java.awt.Color toAWT(Color colour) {
+        return new java.awt.Color(
+            (float)colour.getRed(), 
+            (float)colour.getGreen(), 
+            (float)colour.getBlue(), 
+            (float)colour.getOpacity());
+    }
+
+    // Converted images, shared between instances as the pip images are drawn 
+    // on many cards. Each image is converted by a FutureTask, so the lock is 
+    // only held to find the task and threads converting different images do 
+    // not wait for each other.
+    private static final Map<Image, FutureTask<BufferedImage>> converted = new WeakHashMap<Image, FutureTask<BufferedImage>>();
+
+    /**
+     * Convert a JavaFX image to a BufferedImage, reusing previous conversions.
+     * If another thread is already converting the image, wait for it rather 
+     * than converting it again.
+     * 
+     * @param fxImage to convert.
+     * @return the equivalent BufferedImage.
+     */
+    private static BufferedImage toAWT(Image fxImage) {
+        FutureTask<BufferedImage> conversion;
+        boolean owner = false;
+
+        synchronized (converted) {
+            conversion = converted.get(fxImage);
+            if (conversion == null) {
+                conversion = new FutureTask<BufferedImage>(() -> SwingFXUtils.fromFXImage(fxImage, null));
+                converted.put(fxImage, conversion);
+                owner = true;
+            }
+        }
+
+        if (owner)
+            conversion.run();
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return conversion.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            synchronized (converted) {
+                converted.remove(fxImage, conversion);
+            }
+
+            throw new IllegalStateException("Failed converting image", e.getCause());
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+
+    @Override
+    public void setFill(Color colour) { fill = toAWT(colour); }
+
+    @Override
+    public void setStroke(Color colour) { stroke = toAWT(colour); }
+
+    @Override
+    public void setLineWidth(double width) { g2d.setStroke(new BasicStroke((float)width)); }
+
+    @Override
+    public void fillRect(double x, double y, double w, double h) {
+        g2d.setColor(fill);
+        g2d.fill(new Rectangle2D.Double(x, y, w, h));
+    }
+
+    @Override
+    public void fillRoundRect(double x, double y, double w, double h, double arcWidth, double arcHeight) {
+        g2d.setColor(fill);
+        g2d.fill(new RoundRectangle2D.Double(x, y, w, h, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void strokeRoundRect(double x, double y, double w, double h, double arcWidth, double arcHeight) {
+        g2d.setColor(stroke);
+        g2d.draw(new RoundRectangle2D.Double(x, y, w, h, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void drawImage(Image fxImage, double x, double y, double w, double h) {
+        if (fxImage == null)
+            return;
+
+        final BufferedImage awtImage = toAWT(fxImage);
+
+        // Draw the pre-scaled image at the same sub-pixel position and size 
+        // as the full image, so only a small final adjustment is made.
+        final int width = (int)Math.round(w);
+        final int height = (int)Math.round(h);
+        if (icons != null && width > 0 && height > 0) {
+            final BufferedImage icon = icons.get(fxImage, awtImage, width, height);
+
+            AffineTransform transform = AffineTransform.getTranslateInstance(x, y);
+            transform.scale(w / width, h / height);
+            g2d.drawImage(icon, transform, null);
+
+            return;
+        }
+
+        // Scale the image into the bounds using sub-pixel positioning.
+        final double scaleX = w / awtImage.getWidth();
+        final double scaleY = h / awtImage.getHeight();
+
+        AffineTransform transform = new AffineTransform(scaleX, 0, 0, scaleY, x, y);
+        g2d.drawImage(awtImage, transform, null);
+    }
+
+}
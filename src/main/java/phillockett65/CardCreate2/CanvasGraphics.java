@@ -0,0 +1,80 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CanvasGraphics implements CardGraphics by drawing on a JavaFX Canvas. The 
+ * Canvas must be snapshot on the Application thread to retrieve the image.
+ */
+package phillockett65.CardCreate2;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+
+public class CanvasGraphics implements CardGraphics {
+
+    private final Canvas canvas;
+    private final GraphicsContext gc;
+
+    /**
+     * Create a Canvas of the given size to draw on.
+     * 
+     * @param width of the Canvas in pixels.
+     * @param height of the Canvas in pixels.
+     */
+    public CanvasGraphics(double width, double height) {
+        canvas = new Canvas(width, height);
+        gc = canvas.getGraphicsContext2D();
+    }
+
+    public Canvas getCanvas() { return canvas; }
+
+    @Override
+    public void setFill(Color colour) { gc.setFill(colour); }
+
+    @Override
+    public void setStroke(Color colour) { gc.setStroke(colour); }
+
+    @Override
+    public void setLineWidth(double width) { gc.setLineWidth(width); }
+
+    @Override
+    public void fillRect(double x, double y, double w, double h) {
+        gc.fillRect(x, y, w, h);
+    }
+
+    @Override
+    public void fillRoundRect(double x, double y, double w, double h, double arcWidth, double arcHeight) {
+        gc.fillRoundRect(x, y, w, h, arcWidth, arcHeight);
+    }
+
+    @Override
+    public void strokeRoundRect(double x, double y, double w, double h, double arcWidth, double arcHeight) {
+        gc.strokeRoundRect(x, y, w, h, arcWidth, arcHeight);
+    }
+
+    @Override
+    public void drawImage(Image image, double x, double y, double w, double h) {
+        gc.drawImage(image, x, y, w, h);
+    }
+
+}
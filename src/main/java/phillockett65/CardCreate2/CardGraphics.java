@@ -0,0 +1,69 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CardGraphics is the interface used to draw the cards. It allows the same 
+ * drawing code to target either a JavaFX Canvas or a Java2D BufferedImage.
+ */
+package phillockett65.CardCreate2;
+
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+
+public interface CardGraphics {
+
+    /**
+     * Set the colour used by the fill methods.
+     * 
+     * @param colour to fill with.
+     */
+    public void setFill(Color colour);
+
+    /**
+     * Set the colour used by the stroke methods.
+     * 
+     * @param colour to stroke with.
+     */
+    public void setStroke(Color colour);
+
+    /**
+     * Set the width of the line used by the stroke methods.
+     * 
+     * @param width of the line in pixels.
+     */
+    public void setLineWidth(double width);
+
+    public void fillRect(double x, double y, double w, double h);
+    public void fillRoundRect(double x, double y, double w, double h, double arcWidth, double arcHeight);
+    public void strokeRoundRect(double x, double y, double w, double h, double arcWidth, double arcHeight);
+
+    /**
+     * Draw an image scaled to fit the given bounds.
+     * 
+     * @param image to draw.
+     * @param x co-ordinate of the top left corner.
+     * @param y co-ordinate of the top left corner.
+     * @param w width to draw the image.
+     * @param h height to draw the image.
+     */
+    public void drawImage(Image image, double x, double y, double w, double h);
+
+}
@@ -0,0 +1,144 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CardMask describes the transparent corners of a card with rounded corners.
+ * For each row that passes through the corners it stores the number of 
+ * pixels at either end of the row that fall outside the card. Masks are 
+ * computed directly from the card geometry, cached per geometry and are 
+ * immutable, so they can be used from any thread.
+ */
+package phillockett65.CardCreate2;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import phillockett65.CardCreate2.sample.Default;
+
+
+public class CardMask {
+
+    private static final ConcurrentHashMap<String, CardMask> masks = new ConcurrentHashMap<String, CardMask>();
+
+    private final int width;
+    private final int height;
+
+    // Transparent pixels at each end of the rows within the top corners. The 
+    // rows within the bottom corners are the mirror image.
+    private final int[] spans;
+
+
+    /**
+     * Get the mask for the given card geometry, computing it only the first 
+     * time the geometry is seen.
+     * 
+     * @param width of the card.
+     * @param height of the card.
+     * @param arcWidth of the corner of the card.
+     * @param arcHeight of the corner of the card.
+     * @return the mask.
+     */
+    public static CardMask getMask(int width, int height, double arcWidth, double arcHeight) {
+        final String key = width + "x" + height + ":" + arcWidth + "x" + arcHeight;
+
+        return masks.computeIfAbsent(key, k -> new CardMask(width, height, arcWidth, arcHeight));
+    }
+
+    /**
+     * CardMask constructor. The card is a rounded rectangle with a border 
+     * stroked around the edge, so each corner is treated as an ellipse with 
+     * the radii of the arc, enlarged by half the border width.
+     * 
+     * @param width of the card.
+     * @param height of the card.
+     * @param arcWidth of the corner of the card.
+     * @param arcHeight of the corner of the card.
+     */
+    private CardMask(int width, int height, double arcWidth, double arcHeight) {
+        this.width = width;
+        this.height = height;
+
+        final double stroke = Default.BORDER_WIDTH.getInt() / 2D;
+        final double rx = Math.min(arcWidth, width) / 2;
+        final double ry = Math.min(arcHeight, height) / 2;
+        final double ex = rx + stroke;
+        final double ey = ry + stroke;
+
+        final int rows = (int)Math.min(Math.ceil(ry), height / 2);
+        int[] spans = new int[rows];
+        int count = 0;
+        for (int y = 0; y < rows; ++y) {
+            // Vertical distance from the pixel centre to the arc centre.
+            final double dy = ry - (y + 0.5);
+            final double t = 1 - (dy * dy) / (ey * ey);
+            final double inside = t > 0 ? rx - ex * Math.sqrt(t) : rx;
+
+            // Count the pixels whose centres lie outside the arc.
+            final int span = (int)Math.max(0, Math.min(Math.ceil(inside - 0.5), width / 2));
+            spans[y] = span;
+            if (span > 0)
+                count = y + 1;
+        }
+
+        this.spans = Arrays.copyOf(spans, count);
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    /**
+     * @return the number of rows at the top, and at the bottom, of the card 
+     * that have transparent pixels.
+     */
+    public int getCornerHeight() { return spans.length; }
+
+    /**
+     * @param row within the top corners.
+     * @return the number of transparent pixels at each end of the row.
+     */
+    public int getSpan(int row) { return spans[row]; }
+
+    /**
+     * Make the pixels of a single row of a card that fall outside the card 
+     * transparent. Rows that do not pass through the corners are untouched.
+     * 
+     * @param y index of the row.
+     * @param row of ARGB values, with the same width as the mask.
+     */
+    public void applyRow(int y, int[] row) {
+        if (y < spans.length)
+            clearEnds(row, 0, spans[y]);
+        else if (y >= height - spans.length)
+            clearEnds(row, 0, spans[height - 1 - y]);
+    }
+
+    /**
+     * Make the given number of pixels at either end of a row transparent.
+     * 
+     * @param pixels of the card as ARGB values in row-major order.
+     * @param start index of the first pixel in the row.
+     * @param span number of pixels to clear at each end.
+     */
+    private void clearEnds(int[] pixels, int start, int span) {
+        Arrays.fill(pixels, start, start + span, 0);
+        Arrays.fill(pixels, start + width - span, start + width, 0);
+    }
+
+}
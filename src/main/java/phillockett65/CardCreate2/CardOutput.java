@@ -0,0 +1,54 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CardOutput is the interface used by the Write tasks to store the finished 
+ * cards, whether as separate files or combined into a single file.
+ */
+package phillockett65.CardCreate2;
+
+import java.io.IOException;
+
+
+public interface CardOutput {
+
+    /**
+     * Store a finished card. Called from the write threads, possibly for 
+     * several cards at once, in the order the cards are finished.
+     * 
+     * @param id position in the deck of the card.
+     * @param image of the card.
+     * @param encoder used to encode the card, if the output encodes cards 
+     * individually.
+     */
+    public void write(int id, RowSource image, Encoder encoder) throws IOException;
+
+    /**
+     * Called once, after every card has been written.
+     */
+    public void close() throws IOException;
+
+    /**
+     * Called once, instead of close(), when generation has been cancelled. 
+     * Any partially written output should be deleted.
+     */
+    public void abort();
+
+}
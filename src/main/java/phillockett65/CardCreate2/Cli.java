@@ -0,0 +1,573 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+/*
+ * Cli is the command line entry point used to generate a deck without 
+ * opening any windows. The settings are read from a file previously saved 
+ * by DataStore, the styles can be overridden and the output is sent to the 
+ * given directory. Throughput figures are printed once the deck has been 
+ * generated and the exit status indicates whether every card was saved.
+ * 
+ * Several styles can be given for each of face, index and pip, in which 
+ * case every combination is generated into its own sub-directory of the 
+ * output directory. Likewise, several card sizes can be given, or selected 
+ * in the settings file, in which case each deck is generated at every size 
+ * into per-size sub-directories, sharing the scaled icons between sizes. 
+ * Each deck has its own Pipeline and captured settings, and the next deck 
+ * is started while the previous one is finishing, so that every worker 
+ * thread is kept busy. The decoded images are shared between all the decks.
+ */
+package phillockett65.CardCreate2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import javafx.application.Platform;
+import phillockett65.CardCreate2.sample.Default;
+import phillockett65.Debug.Debug;
+
+
+public class Cli {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    public static final int SUCCESS = 0;
+    public static final int USAGE_ERROR = 1;
+    public static final int SETUP_ERROR = 2;
+    public static final int GENERATION_ERROR = 3;
+
+    // Maximum number of decks being generated at once. Each Pipeline can 
+    // use every worker thread, so two is enough to start the next deck 
+    // while the previous one is finishing.
+    private static final int DECKS_IN_FLIGHT = 2;
+
+    // Style list entry used to select every style in the base directory.
+    private static final String ALL = "*";
+
+    private static final String USAGE = 
+        "Usage: Cli [options] <base directory> <settings file> <output directory>\n" + 
+        "Options:\n" + 
+        "  --face=<styles>       face styles, defaults to the style in the settings file\n" + 
+        "  --index=<styles>      index styles, defaults to the style in the settings file\n" + 
+        "  --pip=<styles>        pip styles, defaults to the style in the settings file\n" + 
+        "  --render-threads=<n>  number of threads used to draw the cards\n" + 
+        "  --write-threads=<n>   number of threads used to save the cards\n" + 
+        "  --sizes=<sizes>       card sizes from: poker, bridge, free, mpc or " + ALL + "\n" + 
+        "Styles are a comma separated list or " + ALL + " for every style. When more than one\n" + 
+        "combination is selected each is sent to its own sub-directory named\n" + 
+        "<face>-<index>-<pip>. When sizes are given, or selected in the settings\n" + 
+        "file, each size is sent to its own sub-directory named after the size.\n" + 
+        "No display is needed: the headless Monocle platform is used unless the\n" + 
+        "glass.platform property is set. When run with JavaFX on the module path,\n" + 
+        "Monocle must be added with --patch-module, as the \"cli\" profile does.";
+
+    private String baseDirectory;
+    private String settingsFile;
+    private String outputDirectory;
+
+    private List<String> faceStyles = null;
+    private List<String> indexStyles = null;
+    private List<String> pipStyles = null;
+    private final List<String[]> combinations = new ArrayList<String[]>();
+    private List<String> sizes = null;
+
+    private int renderThreads = 0;
+    private int writeThreads = 0;
+
+    private final Model model = Model.getInstance();
+    private final Semaphore slots = new Semaphore(DECKS_IN_FLIGHT);
+    private final Set<Pipeline> running = ConcurrentHashMap.newKeySet();
+    private final BlockingQueue<Pipeline> finished = new LinkedBlockingQueue<Pipeline>();
+    private volatile boolean cancelled = false;
+    private int failures = 0;
+
+
+    /************************************************************************
+     * Support code for argument parsing.
+     */
+
+    /**
+     * Parse a thread count option value.
+     * 
+     * @param value of the option.
+     * @return the thread count, or 0 if value is not a positive integer.
+     */
+    private static int parseThreads(String value) {
+        try {
+            final int threads = Integer.parseInt(value);
+
+            return threads > 0 ? threads : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Parse a comma separated style list option value.
+     * 
+     * @param value of the option.
+     * @return the list of style names.
+     */
+    private static List<String> parseStyles(String value) {
+        List<String> styles = new ArrayList<String>();
+        for (String style : value.split(","))
+            if (!style.isEmpty() && !styles.contains(style))
+                styles.add(style);
+
+        return styles;
+    }
+
+    /**
+     * Parse the command line arguments.
+     * 
+     * @param args command line arguments.
+     * @return an error message, or null if the arguments are valid.
+     */
+    private String parse(String[] args) {
+        String[] positional = new String[3];
+        int count = 0;
+
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                final int equals = arg.indexOf('=');
+                if (equals < 0)
+                    return "Missing value for option: " + arg;
+
+                final String name = arg.substring(2, equals);
+                final String value = arg.substring(equals + 1);
+                switch (name) {
+                case "face":            faceStyles = parseStyles(value); break;
+                case "index":           indexStyles = parseStyles(value); break;
+                case "pip":             pipStyles = parseStyles(value); break;
+                case "render-threads":  renderThreads = parseThreads(value); break;
+                case "write-threads":   writeThreads = parseThreads(value); break;
+                case "sizes":           sizes = parseStyles(value); break;
+                default:                return "Unknown option: " + arg;
+                }
+
+                if ((name.endsWith("threads")) && (parseThreads(value) == 0))
+                    return "Invalid thread count: " + arg;
+            } else {
+                if (count == positional.length)
+                    return "Unexpected argument: " + arg;
+
+                positional[count++] = arg;
+            }
+        }
+
+        if (count != positional.length)
+            return "Missing arguments";
+
+        if (sizes != null) {
+            if (sizes.contains(ALL))
+                sizes = Model.CARD_SIZES;
+
+            for (String size : sizes)
+                if (!Model.CARD_SIZES.contains(size))
+                    return "Unknown card size: " + size + " (available: " + String.join(", ", Model.CARD_SIZES) + ")";
+        }
+
+        baseDirectory = positional[0];
+        settingsFile = positional[1];
+        outputDirectory = positional[2];
+
+        return null;
+    }
+
+
+
+    /************************************************************************
+     * Support code for generating the deck.
+     */
+
+    /**
+     * Resolve a style list from the command line against the styles 
+     * available in the base directory.
+     * 
+     * @param kind of style, used in the error message.
+     * @param selected styles from the command line, or null to use current.
+     * @param current style, read from the settings file.
+     * @param styles available for the base directory.
+     * @return the resolved list of styles.
+     * @throws IllegalArgumentException if a selected style is not available.
+     */
+    private static List<String> resolveStyles(String kind, List<String> selected, 
+        String current, List<String> styles) {
+
+        if ((selected == null) || (selected.isEmpty()))
+            return Arrays.asList(current);
+
+        if (selected.contains(ALL))
+            return new ArrayList<String>(styles);
+
+        for (String style : selected)
+            if (!styles.contains(style))
+                throw new IllegalArgumentException("Unknown " + kind + " style: " + style + 
+                    " (available: " + String.join(", ", styles) + ")");
+
+        return selected;
+    }
+
+    /**
+     * Build the list of face, index and pip style combinations to generate.
+     * 
+     * @return an error message, or null if all the styles are valid.
+     */
+    private String buildCombinations() {
+        try {
+            final List<String> faces = resolveStyles("face", faceStyles, model.getFaceStyle(), model.getFaceList());
+            final List<String> indices = resolveStyles("index", indexStyles, model.getIndexStyle(), model.getIndexList());
+            final List<String> pips = resolveStyles("pip", pipStyles, model.getPipStyle(), model.getPipList());
+
+            for (String face : faces)
+                for (String index : indices)
+                    for (String pip : pips)
+                        combinations.add(new String[] { face, index, pip });
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the card sizes to generate each deck at, where a null entry 
+     * indicates the size read from the settings file.
+     */
+    private List<String> getSizes() {
+        if (sizes == null)
+            return Arrays.asList((String)null);
+
+        return sizes;
+    }
+
+    /**
+     * Get the output directory for the indicated deck.
+     * 
+     * @param combination of face, index and pip styles.
+     * @param size of the cards, or null for the size in the settings file.
+     * @return the path of the output directory.
+     */
+    private String getOutputDirectory(String[] combination, String size) {
+        String directory = outputDirectory;
+
+        if (combinations.size() > 1)
+            directory += File.separator + String.join("-", combination);
+
+        if (size != null)
+            directory += File.separator + size;
+
+        return directory;
+    }
+
+    /**
+     * Set up the model from the arguments. Must be run from the Application 
+     * thread.
+     * 
+     * @return an error message, or null if the model is ready to generate.
+     */
+    private String setUp() {
+        model.initialize();
+
+        model.setBaseDirectory(baseDirectory);
+        if ((!model.isValidBaseDirectory()) || (!baseDirectory.equals(model.getBaseDirectory())))
+            return "Not a valid base directory: " + baseDirectory;
+
+        model.initWithoutUI();
+
+        if ((!new File(settingsFile).isFile()) || (!DataStore.readData(settingsFile)))
+            return "Could not read settings file: " + settingsFile;
+
+        final String error = buildCombinations();
+        if (error != null)
+            return error;
+
+        if (renderThreads > 0)
+            model.setRenderThreads(renderThreads);
+        if (writeThreads > 0)
+            model.setWriteThreads(writeThreads);
+
+        // Use the sizes selected in the settings file unless overridden.
+        if ((sizes == null) && (!model.getGenerationSizes().isEmpty()))
+            sizes = model.getGenerationSizes();
+
+        // There is no window to take snapshots in, so always draw off-screen.
+        model.setHeadlessRendering(true);
+
+        return null;
+    }
+
+    /**
+     * Listener for the Pipeline generating a deck, which hands the finished 
+     * Pipeline to the main thread to report on.
+     */
+    private class Deck implements Pipeline.Listener {
+        private Pipeline pipeline;
+
+        @Override
+        public void stepCompleted() {
+        }
+
+        @Override
+        public void pipelineFinished() {
+            synchronized (running) {
+                running.remove(pipeline);
+                running.notifyAll();
+            }
+            finished.add(pipeline);
+            slots.release();
+        }
+    }
+
+    /**
+     * Select the indicated style combination and card size and start 
+     * generating the deck. The settings are captured by the Pipeline, so 
+     * the next combination can be selected as soon as this returns. Must be 
+     * run from the Application thread, with a slot acquired, which is 
+     * released when the deck has finished or could not be started.
+     * 
+     * @param combination of face, index and pip styles.
+     * @param size of the cards, or null for the size in the settings file.
+     * @param icons cache of scaled icons shared by the sizes of the 
+     * combination.
+     * @return an error message, or null if generation has started.
+     */
+    private String startGeneration(String[] combination, String size, IconCache icons) {
+        model.setFaceStyle(combination[0]);
+        model.setIndexStyle(combination[1]);
+        model.setPipStyle(combination[2]);
+        if (size != null)
+            model.setCardSize(size);
+
+        model.setOutputDirectory(getOutputDirectory(combination, size));
+        if (!model.makeOutputDirectory()) {
+            slots.release();
+
+            return "Could not create output directory: " + model.getOutputDirectory();
+        }
+
+        model.startGenerate();
+
+        final GenerationExecutor executor = model.getExecutor();
+        final Deck deck = new Deck();
+        try {
+            deck.pipeline = new Pipeline(deck, executor, executor.getRenderThreads(), icons);
+        } catch (IOException e) {
+            slots.release();
+
+            return "Could not start generation: " + e.getMessage();
+        } finally {
+            // Any Pipeline created has captured the settings it needs, so 
+            // the Model is free for the next combination.
+            model.finishGenerate();
+        }
+
+        running.add(deck.pipeline);
+        deck.pipeline.start();
+
+        return null;
+    }
+
+    /**
+     * Called on shutdown, such as when interrupted by the user, to cancel 
+     * the decks being generated so that no partial files are left and no 
+     * more decks are started. Waits a short while for the workers to stop.
+     */
+    private void cancelGeneration() {
+        cancelled = true;
+        if (running.isEmpty())
+            return;
+
+        System.err.println("Cancelling...");
+        for (Pipeline pipeline : running)
+            pipeline.cancel();
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        try {
+            synchronized (running) {
+                long wait;
+                while (!running.isEmpty() && (wait = deadline - System.nanoTime()) > 0)
+                    TimeUnit.NANOSECONDS.timedWait(running, wait);
+            }
+        } catch (InterruptedException e) {
+            Debug.major(DD, "cancelGeneration() - Interrupted: " + e);
+        }
+    }
+
+    /**
+     * Select the headless Monocle platform, unless another platform has been 
+     * chosen, so that the JavaFX toolkit starts without a display. Must be 
+     * called before the toolkit is started.
+     */
+    public static void selectHeadlessPlatform() {
+        if (System.getProperty("glass.platform") != null)
+            return;
+
+        System.setProperty("glass.platform", "Monocle");
+        System.setProperty("monocle.platform", "Headless");
+        System.setProperty("prism.order", "sw");
+        System.setProperty("prism.text", "t2k");
+    }
+
+    /**
+     * Run the given task on the Application thread and wait for the result.
+     * 
+     * @param task to run.
+     * @return the result of the task.
+     */
+    private static <T> T runAndWait(FutureTask<T> task) throws InterruptedException, ExecutionException {
+        Platform.runLater(task);
+
+        return task.get();
+    }
+
+    /**
+     * Generate the deck as directed by the command line arguments.
+     * 
+     * @param args command line arguments.
+     * @return the exit status.
+     */
+    private int run(String[] args) {
+        String error = parse(args);
+        if (error != null) {
+            System.err.println(error);
+            System.err.println(USAGE);
+
+            return USAGE_ERROR;
+        }
+
+        try {
+            selectHeadlessPlatform();
+            Platform.startup(() -> {});
+            Platform.setImplicitExit(false);
+            Runtime.getRuntime().addShutdownHook(new Thread(this::cancelGeneration, "CardCreate-Cancel"));
+        } catch (RuntimeException e) {
+            System.err.println("Could not start the JavaFX toolkit: " + e.getMessage());
+
+            return SETUP_ERROR;
+        }
+
+        try {
+            error = runAndWait(new FutureTask<String>(this::setUp));
+            if (error != null) {
+                System.err.println(error);
+
+                return SETUP_ERROR;
+            }
+
+            // Each deck is started once a slot is free, and reported once it 
+            // has finished. The sizes of a combination are started one after 
+            // another so that the images of its styles are still cached.
+            final int decks = combinations.size() * getSizes().size();
+            final long start = System.nanoTime();
+            int started = 0;
+            int reported = 0;
+            int cards = 0;
+            for (String[] combination : combinations) {
+                final IconCache icons = new IconCache();
+                for (String size : getSizes()) {
+                    slots.acquire();
+                    if (cancelled) {
+                        slots.release();
+                        break;
+                    }
+
+                    error = runAndWait(new FutureTask<String>(() -> startGeneration(combination, size, icons)));
+                    if (error != null) {
+                        System.err.println(error);
+                        failures++;
+                    } else {
+                        started++;
+                    }
+
+                    Pipeline done;
+                    for (; (done = finished.poll()) != null; ++reported)
+                        cards += report(done);
+                }
+            }
+
+            // Wait for the decks still being generated.
+            for (; reported < started; ++reported)
+                cards += report(finished.take());
+
+            if (decks > 1) {
+                final double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.println(String.format("Total: %d decks, %d cards, %d failures, %.3f s, %.1f cards/s", 
+                    decks, cards, failures, seconds, cards / seconds));
+                System.out.println(ImageCache.getInstance().getStatistics());
+            }
+
+            return failures == 0 ? SUCCESS : GENERATION_ERROR;
+        } catch (InterruptedException | ExecutionException e) {
+            Debug.critical(DD, "run() - " + e);
+            System.err.println("Generation failed: " + e);
+
+            return GENERATION_ERROR;
+        } finally {
+            model.getExecutor().shutdown();
+            Platform.exit();
+        }
+    }
+
+    /**
+     * Print the throughput figures for a completed deck.
+     * 
+     * @param pipeline that generated the deck.
+     * @return the number of cards drawn and saved.
+     */
+    private int report(Pipeline pipeline) {
+        final int cards = Default.DECK_COUNT.getInt();
+        final int written = pipeline.getWrittenCount();
+        final int skipped = pipeline.getUnchangedCount() + pipeline.getIdenticalCount();
+        final int failed = pipeline.getFailedCount();
+        final GenerationStats stats = pipeline.getStats();
+        final double seconds = stats.getSeconds();
+        if (failed > 0 || pipeline.isCancelled())
+            failures++;
+
+        System.out.println("Output sent to: " + pipeline.getOutputDirectory());
+        System.out.println(String.format("%d cards: %d written, %d skipped, %d failed", 
+            cards, written, skipped, failed));
+        System.out.println(String.format("%.3f s, %.1f cards/s, %d render threads, %d write threads", 
+            seconds, stats.getCards() / seconds, model.getRenderThreads(), model.getWriteThreads()));
+
+        for (GenerationStats.Stage stage : GenerationStats.Stage.values())
+            System.out.println("  " + stats.getStageSummary(stage));
+        System.out.println("Full report: " + pipeline.getOutputDirectory() + File.separator + GenerationStats.REPORT);
+
+        return stats.getCards();
+    }
+
+    public static void main(String[] args) {
+        System.exit(new Cli().run(args));
+    }
+
+}
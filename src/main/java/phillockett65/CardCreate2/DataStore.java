@@ -85,6 +85,21 @@ public class DataStore implements Serializable {
 
     private Boolean borderlessJokers;
 
+    // Generation and output settings, which are null when read from a 
+    // settings file saved before they were added.
+    private Boolean headlessRendering;
+    private Boolean incremental;
+    private Boolean skipIdenticalWrites;
+    private String format;
+    private Integer compressionLevel;
+    private String filter;
+
+    private String outputMode;
+    private Integer atlasPadding;
+    private String atlasPacking;
+    private String atlasSidecar;
+    private ArrayList<String> generationSizes;
+
 
     public DataStore() {
         
@@ -135,6 +150,19 @@ public class DataStore implements Serializable {
         showGuideBox = model.isShowGuideBox();
 
         borderlessJokers = model.isBorderlessJokers();
+
+        headlessRendering = model.isHeadlessRendering();
+        incremental = model.isIncremental();
+        skipIdenticalWrites = model.isSkipIdenticalWrites();
+        format = model.getFormat();
+        compressionLevel = model.getCompressionLevel();
+        filter = model.getFilter();
+
+        outputMode = model.getOutputMode();
+        atlasPadding = model.getAtlasPadding();
+        atlasPacking = model.getAtlasPacking();
+        atlasSidecar = model.getAtlasSidecar();
+        generationSizes = new ArrayList<String>(model.getGenerationSizes());
  
         return success;
     }
@@ -183,6 +211,31 @@ public class DataStore implements Serializable {
 
         model.setBorderlessJokers(borderlessJokers);
 
+        if (headlessRendering != null)
+            model.setHeadlessRendering(headlessRendering);
+        if (incremental != null)
+            model.setIncremental(incremental);
+        if (skipIdenticalWrites != null)
+            model.setSkipIdenticalWrites(skipIdenticalWrites);
+        if (format != null)
+            model.setFormat(format);
+        if (compressionLevel != null)
+            model.setCompressionLevel(compressionLevel);
+        if (filter != null)
+            model.setFilter(filter);
+
+        if (outputMode != null)
+            model.setOutputMode(outputMode);
+        if (atlasPadding != null)
+            model.setAtlasPadding(atlasPadding);
+        if (atlasPacking != null)
+            model.setAtlasPacking(atlasPacking);
+        if (atlasSidecar != null)
+            model.setAtlasSidecar(atlasSidecar);
+        if (generationSizes != null)
+            for (String size : Model.CARD_SIZES)
+                model.setGenerationSize(size, generationSizes.contains(size));
+
         return success;
     }
 
@@ -217,12 +270,23 @@ public class DataStore implements Serializable {
     }
 
     public static boolean readData() {
+        return readData(Model.getInstance().getSettingsFile());
+    }
+
+    /**
+     * Restore the settings from the given file, which need not be in the 
+     * current output directory.
+     * 
+     * @param path of a settings file previously written by writeData().
+     * @return true if the settings were restored, false otherwise.
+     */
+    public static boolean readData(String path) {
         boolean success = false;
         Model model = Model.getInstance();
 
         ObjectInputStream objectInputStream;
         try {
-            objectInputStream = new ObjectInputStream(new FileInputStream(model.getSettingsFile()));
+            objectInputStream = new ObjectInputStream(new FileInputStream(path));
 
             DataStore dataStore = (DataStore)objectInputStream.readObject();
             success = dataStore.push(model);
@@ -0,0 +1,54 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Encoder is the interface used to encode the card images for saving. Each 
+ * implementation supplies the file extension of the format it produces.
+ * Encoders must be immutable so that they can be shared between threads.
+ */
+package phillockett65.CardCreate2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+public interface Encoder {
+
+    /**
+     * @return the file extension of the encoded format, without the dot.
+     */
+    public String getExtension();
+
+    /**
+     * @return a description of the format and its settings, which changes 
+     * whenever the encoded output would change.
+     */
+    public String getDescription();
+
+    /**
+     * Encode the given image to the given stream, reading it a row at a 
+     * time.
+     * 
+     * @param image to encode.
+     * @param out stream to write the encoded image to. It is not closed.
+     */
+    public void encode(RowSource image, OutputStream out) throws IOException;
+
+}
@@ -0,0 +1,70 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * FileOutput stores each card in its own file.
+ */
+package phillockett65.CardCreate2;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+public class FileOutput implements CardOutput {
+
+    private final String[] paths;
+
+    /**
+     * FileOutput constructor.
+     * 
+     * @param paths of the file for each card, indexed by position in the deck.
+     */
+    public FileOutput(String[] paths) {
+        this.paths = paths;
+    }
+
+    @Override
+    public void write(int id, RowSource image, Encoder encoder) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(paths[id]), 64 * 1024)) {
+            encoder.encode(image, out);
+        } catch (IOException | RuntimeException e) {
+            // Do not leave a partial file behind.
+            new File(paths[id]).delete();
+
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Nothing to do as each file is deleted by write() if it is not 
+     * completed.
+     */
+    @Override
+    public void abort() {
+    }
+
+}
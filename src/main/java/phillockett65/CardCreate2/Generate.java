@@ -23,9 +23,11 @@
  */
 package phillockett65.CardCreate2;
 
+import java.awt.image.BufferedImage;
+import java.io.File;
+
 import javafx.concurrent.Task;
 import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
 
 import phillockett65.CardCreate2.sample.Default;
@@ -33,20 +35,28 @@ import phillockett65.CardCreate2.sample.Default;
 
 public class Generate extends Task<Long> {
 
-    private final Model model;
+    private final GenerationSpec spec;
+    private final int id;
     private Long progress;
     private Canvas canvas;
+    private BufferedImage cardImage;
+    private BufferedImage pooledImage = null;
     private int defaults;
+    private ImagePool pool = null;
+    private IconCache icons = null;
 
     /**
      * Generate task constructor.
      * 
+     * @param spec the settings captured for the generation.
+     * @param id position in the deck of the card to generate.
      * @param progress so far.
      * @param defaults number of times no joker image file was found, used to 
      *     vary default joker generation.
      */
-    public Generate(Long progress, int defaults) {
-        model = Model.getInstance();
+    public Generate(GenerationSpec spec, int id, Long progress, int defaults) {
+        this.spec = spec;
+        this.id = id;
         this.progress = progress;
         this.defaults = defaults;
 
@@ -54,12 +64,44 @@ public class Generate extends Task<Long> {
         updateProgress(progress, Default.GENERATE_STEPS.getInt());
     }
 
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return the Canvas the card was drawn on, or null if the card was drawn 
+     * using headless rendering.
+     */
     public Canvas getCanvas() {
         return canvas;
     }
 
-    public int getDefaults() {
-        return defaults;
+    /**
+     * @return the image the card was drawn on using headless rendering, or 
+     * null if the card was drawn on a Canvas.
+     */
+    public BufferedImage getImage() {
+        return cardImage;
+    }
+
+    /**
+     * Draw the card on an image taken from a pool instead of a new image 
+     * when using headless rendering.
+     * 
+     * @param pool to take the image from.
+     */
+    public void setImagePool(ImagePool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Draw the icons using images scaled once for the whole generation when 
+     * using headless rendering.
+     * 
+     * @param icons cache of scaled images.
+     */
+    public void setIconCache(IconCache icons) {
+        this.icons = icons;
     }
 
     private class CardContext {
@@ -67,30 +109,45 @@ public class Generate extends Task<Long> {
         private final double height;
         private final double xOffset;
         private final double yOffset;
-        private final Canvas canvas;
-        private final GraphicsContext gc;
+        private final CanvasGraphics canvasGraphics;
+        private final BufferedGraphics bufferedGraphics;
+        private final CardGraphics gc;
 
         public CardContext() {
 
-            width = model.getWidth();
-            height = model.getHeight();
-            xOffset = model.getMpcBorderWidth();
-            yOffset = model.getMpcBorderHeight();
+            width = spec.getWidth();
+            height = spec.getHeight();
+            xOffset = spec.getXOffset();
+            yOffset = spec.getYOffset();
 
             final double xMax = width + (xOffset * 2);
             final double yMax = height + (yOffset * 2);
 
-            canvas = new Canvas(xMax, yMax);
-            gc = canvas.getGraphicsContext2D();
+            if (spec.isHeadlessRendering()) {
+                canvasGraphics = null;
+                final BufferedImage image;
+                if (pool != null) {
+                    image = pool.takeImage();
+                    pooledImage = image;
+                } else {
+                    image = new BufferedImage((int)xMax, (int)yMax, BufferedImage.TYPE_INT_ARGB);
+                }
+                bufferedGraphics = new BufferedGraphics(image, icons);
+                gc = bufferedGraphics;
+            } else {
+                canvasGraphics = new CanvasGraphics(xMax, yMax);
+                bufferedGraphics = null;
+                gc = canvasGraphics;
+            }
 
-            gc.setFill(model.getBackgroundColour());
+            gc.setFill(spec.getBackgroundColour());
             
-            if (!model.isMpcCardSize()) {
-                final double arcWidth = model.getArcWidthPX();
-                final double arcHeight = model.getArcHeightPX();
+            if (!spec.isMpcCardSize()) {
+                final double arcWidth = spec.getArcWidthPX();
+                final double arcHeight = spec.getArcHeightPX();
 
                 gc.fillRoundRect(0, 0, xMax, yMax, arcWidth, arcHeight);
-                gc.setStroke(model.border);
+                gc.setStroke(spec.getBorderColour());
                 gc.setLineWidth(Default.BORDER_WIDTH.getInt());
                 gc.strokeRoundRect(0, 0, xMax, yMax, arcWidth, arcHeight);
             } else {
@@ -98,105 +155,125 @@ public class Generate extends Task<Long> {
             }
         }
 
-        public Canvas getCanvas() { return canvas; }
-        public GraphicsContext getGraphicsContext() { return gc; }
+        public CardGraphics getGraphicsContext() { return gc; }
         public double getWidth() { return width; }
         public double getHeight() { return height; }
         public double getXOffset() { return xOffset; }
         public double getYOffset() { return yOffset; }
 
+        /**
+         * Make the finished card available to the caller, either as a Canvas 
+         * that needs a snapshot taken or as a BufferedImage.
+         */
+        public void finish() {
+            if (canvasGraphics != null)
+                canvas = canvasGraphics.getCanvas();
+            else
+                cardImage = bufferedGraphics.getImage();
+        }
+
     }
 
 
     /**
-     * Generate the indicated card using the current settings.
+     * Generate the indicated card using the captured settings.
      */
     private void generateCard() {
-        final int suit = model.currentSuit();
-        final int card = model.currentCard();
-        final Image[] images = model.currentImages();
+        final int suit = spec.getSuit(id);
+        final int card = spec.getCard(id);
+        final Image[] images = spec.getPipImages(suit);
 
         // Create blank card.
         CardContext cc = new CardContext();
-        GraphicsContext gc = cc.getGraphicsContext();
+        CardGraphics gc = cc.getGraphicsContext();
 
         // Add the icons using the Payloads in priority order.
-        if (model.showWatermark(suit, card))
-            gc.drawImage(model.getWatermark(), cc.getXOffset(), cc.getYOffset(), cc.getWidth(), cc.getHeight());
+        if (spec.showWatermark(id))
+            gc.drawImage(spec.getWatermark(), cc.getXOffset(), cc.getYOffset(), cc.getWidth(), cc.getHeight());
 
-        int[] priorities = model.getPriorityList();
+        int[] priorities = spec.getPriorityList();
         for (int i = priorities.length-1; i >= 0; --i) {
 
+            // Abandon the card part way through if cancelled.
+            if (isCancelled())
+                return;
+
             final int priority = priorities[i];
 
             switch (priority) {
             case Model.INDEX_ID:
-                if (model.shouldIndexBeDisplayed()) {
-                    Image image = Utils.loadImage(model.getIndexImagePath(suit, card));
-                    Image rotatedImage = Utils.rotateImage(image);
+                if (spec.isDisplayed(id, priority)) {
+                    final String path = spec.getIndexImagePath(id);
+                    Image image = Utils.loadImage(path);
+                    Image rotatedImage = Utils.loadRotatedImage(path);
         
-                    model.drawCardIndex(gc, image, rotatedImage);
+                    spec.drawCardIndex(gc, image, rotatedImage);
                 }
             break;
         
             case Model.CORNER_PIP_ID:
-                if (model.shouldCornerPipBeDisplayed())
-                    model.drawCardCornerPip(gc, images[2], images[3]);
+                if (spec.isDisplayed(id, priority))
+                    spec.drawCardCornerPip(gc, images[2], images[3]);
             break;
 
             case Model.STANDARD_PIP_ID:
-                if (model.shouldStandardPipBeDisplayed(suit, card))
-                    model.drawCardStandardPip(gc, images[0], images[1], card);
+                if (spec.isDisplayed(id, priority))
+                    spec.drawCardStandardPip(gc, images[0], images[1], card);
             break;
 
             case Model.FACE_PIP_ID:
-                if (model.shouldFacePipBeDisplayed(card))
-                    model.drawCardFacePip(gc, images[4], images[5]);
+                if (spec.isDisplayed(id, priority))
+                    spec.drawCardFacePip(gc, images[4], images[5]);
             break;
 
             case Model.FACE_ID:
-                if (model.shouldFaceImageBeDisplayed(suit, card)) {
-                    Image image = Utils.loadImage(model.getFaceImagePath(suit, card));
-                    Image rotatedImage = Utils.rotateImage(image);
+                if (spec.isDisplayed(id, priority)) {
+                    final String path = spec.getFaceImagePath(id);
+                    Image image = Utils.loadImage(path);
+                    Image rotatedImage = Utils.loadRotatedImage(path);
         
-                    model.drawCardFace(gc, image, rotatedImage);
+                    spec.drawCardFace(gc, image, rotatedImage);
                 }
             break;
             }
         }
 
-        canvas = cc.getCanvas();
+        cc.finish();
     }
 
     /**
-     * Generate the indicated joker using the current settings.
+     * Generate the indicated joker using the captured settings.
      */
     private void generateJoker() {
-        final int suit = model.currentSuit();
+        final int suit = spec.getSuit(id);
 
         // Create blank card.
         CardContext cc = new CardContext();
-        GraphicsContext gc = cc.getGraphicsContext();
+        CardGraphics gc = cc.getGraphicsContext();
 
         // Draw Joker image specific to the suit.
-        Image faceImage = Utils.loadImage(model.getFaceImagePath(suit, 0));
+        Image faceImage = Utils.loadImage(spec.getFaceImagePath(id));
         if (faceImage == null) {
             defaults++;
             if (defaults % 2 == 1) {
-                faceImage = Utils.loadImage(model.getBaseDirectory() + "\\boneyard\\Back.png");
+                faceImage = Utils.loadImage(spec.getBaseDirectory() + File.separator + "boneyard" + File.separator + "Back.png");
             }
         }
-        model.drawJokerFace(gc, faceImage);
+        spec.drawJokerFace(gc, faceImage);
+
+        if (isCancelled())
+            return;
 
         // Draw Joker indices specific to the suit.
-        Image indexImage = Utils.loadImage(model.getJokerIndexImagePath(suit));
+        final String indexPath = spec.getJokerIndexImagePath(suit);
+        Image indexImage = Utils.loadImage(indexPath);
         if (indexImage != null) {
-            Image rotatedImage = Utils.rotateImage(indexImage);
+            Image rotatedImage = Utils.loadRotatedImage(indexPath);
 
-            model.drawJokerIndex(gc, indexImage, rotatedImage);
+            spec.drawJokerIndex(gc, indexImage, rotatedImage);
         }
 
-        canvas = cc.getCanvas();
+        cc.finish();
     }
 
 
@@ -211,10 +288,17 @@ public class Generate extends Task<Long> {
         }
         
         // Generate the card.
-        if (model.currentIsJoker()) {
-            generateJoker();
-        } else {
-            generateCard();
+        try {
+            if (spec.isJoker(id)) {
+                generateJoker();
+            } else {
+                generateCard();
+            }
+        } finally {
+            // Return the image to the pool if the card was abandoned or 
+            // failed part way through, as the caller never sees it.
+            if (cardImage == null && pool != null)
+                pool.release(pooledImage);
         }
 
         updateProgress(++progress, Default.GENERATE_STEPS.getInt());
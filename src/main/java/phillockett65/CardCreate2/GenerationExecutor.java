@@ -0,0 +1,137 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * GenerationExecutor is a long-lived pair of named thread pools used to 
+ * generate the cards. The render pool is used for the CPU-bound drawing and 
+ * the write pool for encoding and saving the images. The pools are sized 
+ * independently and can be resized between generations.
+ */
+package phillockett65.CardCreate2;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import phillockett65.Debug.Debug;
+
+
+public class GenerationExecutor {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    private final ThreadPoolExecutor renderPool;
+    private final ThreadPoolExecutor writePool;
+
+    /**
+     * GenerationExecutor constructor.
+     * 
+     * @param renderThreads number of threads used to draw the cards.
+     * @param writeThreads number of threads used to save the cards.
+     */
+    public GenerationExecutor(int renderThreads, int writeThreads) {
+        renderPool = createPool("Render", renderThreads);
+        writePool = createPool("Write", writeThreads);
+    }
+
+    /**
+     * Create a fixed size pool of named daemon threads.
+     * 
+     * @param name used as part of the thread names.
+     * @param threads number of threads in the pool.
+     * @return the thread pool.
+     */
+    private static ThreadPoolExecutor createPool(String name, int threads) {
+        final AtomicInteger count = new AtomicInteger();
+
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, 
+            new LinkedBlockingQueue<Runnable>(), runnable -> {
+                Thread th = new Thread(runnable, "CardCreate-" + name + "-" + count.incrementAndGet());
+                th.setDaemon(true);
+
+                return th;
+            });
+    }
+
+    /**
+     * Change the number of threads in a pool. Work already queued is not 
+     * affected.
+     * 
+     * @param pool to resize.
+     * @param threads new number of threads.
+     */
+    private static void resize(ThreadPoolExecutor pool, int threads) {
+        if (threads > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(threads);
+            pool.setCorePoolSize(threads);
+        } else {
+            pool.setCorePoolSize(threads);
+            pool.setMaximumPoolSize(threads);
+        }
+    }
+
+    public int getRenderThreads() { return renderPool.getMaximumPoolSize(); }
+    public int getWriteThreads() { return writePool.getMaximumPoolSize(); }
+
+    public void setRenderThreads(int threads) { resize(renderPool, threads); }
+    public void setWriteThreads(int threads) { resize(writePool, threads); }
+
+    /**
+     * Run the given work on the render pool.
+     * 
+     * @param work to run.
+     */
+    public void executeRender(Runnable work) {
+        renderPool.execute(work);
+    }
+
+    /**
+     * Run the given work on the write pool.
+     * 
+     * @param work to run.
+     */
+    public void executeWrite(Runnable work) {
+        writePool.execute(work);
+    }
+
+    /**
+     * Shut down both pools, giving any work in progress a short time to 
+     * complete before it is interrupted.
+     */
+    public void shutdown() {
+        renderPool.shutdown();
+        writePool.shutdown();
+
+        try {
+            if (!renderPool.awaitTermination(1, TimeUnit.SECONDS))
+                renderPool.shutdownNow();
+
+            if (!writePool.awaitTermination(1, TimeUnit.SECONDS))
+                writePool.shutdownNow();
+        } catch (InterruptedException e) {
+            Debug.major(DD, "shutdown() - Interrupted: " + e);
+            renderPool.shutdownNow();
+            writePool.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,448 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * GenerationSpec is an immutable snapshot of everything needed to draw and
+ * save the cards, captured from the Model when a generation starts. The
+ * render and write workers only read from the snapshot, so they need no
+ * locking and the deck does not change if the settings are changed part way
+ * through a generation.
+ */
+package phillockett65.CardCreate2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+import phillockett65.CardCreate2.sample.Default;
+import phillockett65.CardCreate2.sample.DoublePayload;
+import phillockett65.CardCreate2.sample.ImagePayload;
+import phillockett65.CardCreate2.sample.MultiPayload;
+import phillockett65.CardCreate2.sample.QuadPayload;
+import phillockett65.Debug.Debug;
+
+
+public class GenerationSpec {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    // Changed whenever the renderers draw the same settings differently, so 
+    // that cards drawn by an older version are regenerated.
+    private static final int RENDERER_VERSION = 2;
+
+    /**
+     * The position and size of a card item, in pixels, captured from its
+     * Payload.
+     */
+    public static class Layout {
+        private final double centreX;
+        private final double centreY;
+        private final double height;
+        private final boolean keepAspectRatio;
+
+        public Layout(double centreX, double centreY, double height, boolean keepAspectRatio) {
+            this.centreX = centreX;
+            this.centreY = centreY;
+            this.height = height;
+            this.keepAspectRatio = keepAspectRatio;
+        }
+
+        public double getX() { return centreX; }
+        public double getY() { return centreY; }
+        public double getHeight() { return height; }
+        public boolean isKeepAspectRatio() { return keepAspectRatio; }
+    }
+
+
+    /************************************************************************
+     * Card geometry and appearance.
+     */
+
+    private final double width;
+    private final double height;
+    private final double xOffset;
+    private final double yOffset;
+    private final double arcWidth;
+    private final double arcHeight;
+    private final boolean mpcCardSize;
+    private final boolean cropCorners;
+    private final boolean headless;
+    private final boolean leftHanded;
+    private final boolean borderlessJokers;
+    private final Color background;
+    private final Color border;
+    private final String encoder;
+
+    /************************************************************************
+     * Card items and what is displayed on each card.
+     */
+
+    private final Layout[] layouts;
+    private final int[] priorities;
+    private final Image watermark;
+    private final boolean[] watermarked;
+    private final boolean[][] displayed;
+    private final Image[][] pipImages;
+
+    // Used only to draw the card items, which depends on nothing but the 
+    // captured settings, so they are safe to use from the workers.
+    private final QuadPayload index;
+    private final QuadPayload cornerPip;
+    private final MultiPayload standardPip;
+    private final DoublePayload facePip;
+    private final ImagePayload face;
+
+    /************************************************************************
+     * Source and output files.
+     */
+
+    private final String baseDirectory;
+    private final String outputDirectory;
+    private final String[] indexPaths;
+    private final String[] facePaths;
+    private final String[] jokerIndexPaths;
+    private final String[] outputPaths;
+    private final int[] jokerDefaults;
+
+
+    /**
+     * GenerationSpec constructor. Must be run from the Application thread,
+     * while the Model is generating, as the current settings are read here.
+     *
+     * @param model to capture the settings from.
+     * @param layouts of each card item, indexed by item id.
+     * @param pipImages the standard, corner and face pip images, and their
+     * rotated versions, for each suit.
+     * @param index Payload used to draw the indices.
+     * @param cornerPip Payload used to draw the corner pips.
+     * @param standardPip Payload used to draw the standard pips.
+     * @param facePip Payload used to draw the face pips.
+     * @param face Payload used to draw the face images.
+     */
+    public GenerationSpec(Model model, Layout[] layouts, Image[][] pipImages, 
+        QuadPayload index, QuadPayload cornerPip, MultiPayload standardPip, 
+        DoublePayload facePip, ImagePayload face) {
+        width = model.getWidth();
+        height = model.getHeight();
+        xOffset = model.getMpcBorderWidth();
+        yOffset = model.getMpcBorderHeight();
+        arcWidth = model.getArcWidthPX();
+        arcHeight = model.getArcHeightPX();
+        mpcCardSize = model.isMpcCardSize();
+        cropCorners = model.isCropCorners();
+        headless = model.isHeadlessRendering();
+        leftHanded = model.isLeftHanded();
+        borderlessJokers = model.isBorderlessJokers();
+        background = model.getBackgroundColour();
+        border = model.border;
+        encoder = model.getEncoder().getDescription();
+
+        this.layouts = layouts.clone();
+        this.pipImages = pipImages.clone();
+        priorities = model.getPriorityList();
+        watermark = model.getWatermark();
+        this.index = index;
+        this.cornerPip = cornerPip;
+        this.standardPip = standardPip;
+        this.facePip = facePip;
+        this.face = face;
+
+        baseDirectory = model.getBaseDirectory();
+        outputDirectory = model.getOutputDirectory();
+
+        final int count = Default.DECK_COUNT.getInt();
+        final int suits = pipImages.length;
+
+        watermarked = new boolean[count];
+        displayed = new boolean[count][layouts.length];
+        indexPaths = new String[count];
+        facePaths = new String[count];
+        outputPaths = new String[count];
+        jokerIndexPaths = new String[suits];
+        jokerDefaults = new int[suits];
+
+        for (int id = 0; id < count; ++id) {
+            final int s = getSuit(id);
+            final int c = getCard(id);
+
+            watermarked[id] = model.showWatermark(s, c);
+            displayed[id][Model.INDEX_ID] = model.shouldIndexBeDisplayed();
+            displayed[id][Model.CORNER_PIP_ID] = model.shouldCornerPipBeDisplayed();
+            displayed[id][Model.STANDARD_PIP_ID] = model.shouldStandardPipBeDisplayed(s, c);
+            displayed[id][Model.FACE_PIP_ID] = model.shouldFacePipBeDisplayed(c);
+            displayed[id][Model.FACE_ID] = model.shouldFaceImageBeDisplayed(s, c);
+
+            if (!isJoker(id))
+                indexPaths[id] = model.getIndexImagePath(s, c);
+            facePaths[id] = model.getFaceImagePath(s, c);
+            outputPaths[id] = model.getOutputImagePath(id);
+        }
+
+        for (int s = 0; s < suits; ++s) {
+            jokerIndexPaths[s] = model.getJokerIndexImagePath(s);
+            jokerDefaults[s] = model.getJokerDefaults(s);
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for the card geometry and appearance.
+     */
+
+    /**
+     * @return the card width in pixels, excluding any MPC border.
+     */
+    public double getWidth() { return width; }
+
+    /**
+     * @return the card height in pixels, excluding any MPC border.
+     */
+    public double getHeight() { return height; }
+
+    /**
+     * @return the horizontal MPC border in pixels, 0 if not an MPC card.
+     */
+    public double getXOffset() { return xOffset; }
+
+    /**
+     * @return the vertical MPC border in pixels, 0 if not an MPC card.
+     */
+    public double getYOffset() { return yOffset; }
+
+    /**
+     * @return the width of the image to generate, including any MPC border.
+     */
+    public int getImageWidth() { return (int)(width + (xOffset * 2)); }
+
+    /**
+     * @return the height of the image to generate, including any MPC border.
+     */
+    public int getImageHeight() { return (int)(height + (yOffset * 2)); }
+
+    public double getArcWidthPX() { return arcWidth; }
+    public double getArcHeightPX() { return arcHeight; }
+    public boolean isMpcCardSize() { return mpcCardSize; }
+    public boolean isCropCorners() { return cropCorners; }
+    public boolean isHeadlessRendering() { return headless; }
+    public boolean isLeftHanded() { return leftHanded; }
+    public boolean isBorderlessJokers() { return borderlessJokers; }
+    public Color getBackgroundColour() { return background; }
+    public Color getBorderColour() { return border; }
+
+
+    /************************************************************************
+     * Support code for identifying the cards.
+     */
+
+    /**
+     * @param id position in the deck of the card.
+     * @return the suit of the card.
+     */
+    public int getSuit(int id) { return id / Default.CARD_COUNT.getInt(); }
+
+    /**
+     * @param id position in the deck of the card.
+     * @return the card within the suit, where 0 is the Joker.
+     */
+    public int getCard(int id) { return id % Default.CARD_COUNT.getInt(); }
+
+    public boolean isJoker(int id) { return getCard(id) == 0; }
+
+
+    /************************************************************************
+     * Support code for the card items.
+     */
+
+    /**
+     * @param item id of the card item, e.g. Model.INDEX_ID.
+     * @return the position and size of the card item.
+     */
+    public Layout getLayout(int item) { return layouts[item]; }
+
+    /**
+     * @return the card item ids, from the highest priority to the lowest.
+     */
+    public int[] getPriorityList() { return priorities.clone(); }
+
+    public Image getWatermark() { return watermark; }
+
+    /**
+     * @param id position in the deck of the card.
+     * @return true if the watermark should be drawn on the card.
+     */
+    public boolean showWatermark(int id) { return watermarked[id]; }
+
+    /**
+     * @param id position in the deck of the card.
+     * @param item id of the card item, e.g. Model.INDEX_ID.
+     * @return true if the card item should be drawn on the card.
+     */
+    public boolean isDisplayed(int id, int item) { return displayed[id][item]; }
+
+    /**
+     * @param s suit of the card.
+     * @return the standard, corner and face pip images, each followed by the
+     * rotated version. Must not be modified.
+     */
+    public Image[] getPipImages(int s) { return pipImages[s]; }
+
+
+    /************************************************************************
+     * Support code for drawing the card items, timed as the draw stage.
+     */
+
+    public void drawCardIndex(CardGraphics gc, Image image, Image rotatedImage) {
+        final long start = GenerationStats.start();
+        index.drawCard(gc, this, image, rotatedImage);
+        GenerationStats.record(GenerationStats.Stage.DRAW, start);
+    }
+
+    public void drawCardCornerPip(CardGraphics gc, Image image, Image rotatedImage) {
+        final long start = GenerationStats.start();
+        cornerPip.drawCard(gc, this, image, rotatedImage);
+        GenerationStats.record(GenerationStats.Stage.DRAW, start);
+    }
+
+    public void drawCardFace(CardGraphics gc, Image image, Image rotatedImage) {
+        final long start = GenerationStats.start();
+        face.drawCard(gc, this, image, rotatedImage);
+        GenerationStats.record(GenerationStats.Stage.DRAW, start);
+    }
+
+    public void drawCardStandardPip(CardGraphics gc, Image image, Image rotatedImage, int pattern) {
+        final long start = GenerationStats.start();
+        standardPip.drawCard(gc, this, image, rotatedImage, pattern);
+        GenerationStats.record(GenerationStats.Stage.DRAW, start);
+    }
+
+    public void drawCardFacePip(CardGraphics gc, Image image, Image rotatedImage) {
+        final long start = GenerationStats.start();
+        facePip.drawCard(gc, this, image, rotatedImage);
+        GenerationStats.record(GenerationStats.Stage.DRAW, start);
+    }
+
+    public void drawJokerIndex(CardGraphics gc, Image image, Image rotatedImage) {
+        final long start = GenerationStats.start();
+        index.drawJoker(gc, this, image, rotatedImage);
+        GenerationStats.record(GenerationStats.Stage.DRAW, start);
+    }
+
+    public void drawJokerFace(CardGraphics gc, Image image) {
+        final long start = GenerationStats.start();
+        face.drawJoker(gc, this, image);
+        GenerationStats.record(GenerationStats.Stage.DRAW, start);
+    }
+
+
+    /**
+     * Generate a hash of the settings that the indicated card is drawn and 
+     * saved with. Only the card items that appear on the card are included, 
+     * so changing an item only changes the hash of the cards it is drawn on. 
+     * The source images are not included.
+     * 
+     * @param id position in the deck of the card.
+     * @return the hash as a hex string, or an empty string if it could not 
+     * be generated.
+     */
+    public String getSettingsHash(int id) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(RENDERER_VERSION);
+            out.writeUTF(encoder);
+            out.writeBoolean(headless);
+            out.writeDouble(width);
+            out.writeDouble(height);
+            out.writeDouble(xOffset);
+            out.writeDouble(yOffset);
+            out.writeDouble(arcWidth);
+            out.writeDouble(arcHeight);
+            out.writeBoolean(mpcCardSize);
+            out.writeBoolean(cropCorners);
+            out.writeUTF(background.toString());
+            out.writeUTF(border.toString());
+
+            if (isJoker(id)) {
+                // Jokers are drawn in fixed positions.
+                out.writeBoolean(borderlessJokers);
+            } else {
+                out.writeBoolean(watermarked[id]);
+
+                // The items drawn, from the back to the front.
+                for (int i = priorities.length-1; i >= 0; --i) {
+                    final int item = priorities[i];
+                    if (!displayed[id][item])
+                        continue;
+
+                    final Layout layout = layouts[item];
+                    out.writeInt(item);
+                    out.writeDouble(layout.getX());
+                    out.writeDouble(layout.getY());
+                    out.writeDouble(layout.getHeight());
+                    out.writeBoolean(layout.isKeepAspectRatio());
+                    if (item == Model.INDEX_ID || item == Model.CORNER_PIP_ID)
+                        out.writeBoolean(leftHanded);
+                }
+            }
+            out.close();
+
+            StringBuilder hash = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray()))
+                hash.append(String.format("%02x", b));
+
+            return hash.toString();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            Debug.critical(DD, "getSettingsHash() - " + e);
+        }
+
+        return "";
+    }
+
+
+    /************************************************************************
+     * Support code for the source and output files.
+     */
+
+    public String getBaseDirectory() { return baseDirectory; }
+    public String getOutputDirectory() { return outputDirectory; }
+    public String getIndexImagePath(int id) { return indexPaths[id]; }
+    public String getFaceImagePath(int id) { return facePaths[id]; }
+    public String getOutputImagePath(int id) { return outputPaths[id]; }
+
+    /**
+     * @param s suit of the joker.
+     * @return the path of the joker index image for the suit.
+     */
+    public String getJokerIndexImagePath(int s) { return jokerIndexPaths[s]; }
+
+    /**
+     * @param s suit of the joker.
+     * @return number of preceding jokers with no image file.
+     */
+    public int getJokerDefaults(int s) { return jokerDefaults[s]; }
+
+}
@@ -0,0 +1,377 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+/*
+ * GenerationStats records how long each stage of generating a deck takes, 
+ * as a latency histogram per stage, along with the overall cards per 
+ * second. Each Pipeline has its own statistics, which its worker threads 
+ * make current while they work for it, so that only the work of that 
+ * generation is recorded and not, for example, images loaded for the 
+ * preview. The statistics can be written as a JSON report once the 
+ * generation has finished. Recording is lock-free so that it can be called 
+ * from every worker thread.
+ */
+package phillockett65.CardCreate2;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import phillockett65.Debug.Debug;
+
+
+public class GenerationStats {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    public static final String REPORT = "generation.json";
+
+    // Bucket b counts durations of less than 2^b microseconds.
+    private static final int BUCKETS = 32;
+
+    /**
+     * The timed stages of generating a card. A stage may be timed within 
+     * another stage, its parent, in which case its time is also included in 
+     * the total of the parent.
+     */
+    public enum Stage {
+        LOAD("load", "Loading a source image or its rotated version, from the cache or disc, including rotate"),
+        ROTATE("rotate", "Rotating a source image by 180 degrees"),
+        DRAW("draw", "Drawing a card item with its Payload"),
+        RENDER("render", "Drawing a whole card, including load, rotate and draw"),
+        SNAPSHOT("snapshot", "Taking a snapshot of a Canvas on the Application thread"),
+        QUEUE("queue", "Waiting in the hand-off queue to be saved"),
+        HASH("hash", "Hashing the masked pixels to check for identical output"),
+        SAVE("save", "Masking, encoding and writing a card");
+
+        private final String label;
+        private final String description;
+
+        private Stage(String label, String description) {
+            this.label = label;
+            this.description = description;
+        }
+
+        public String getLabel() { return label; }
+        public String getDescription() { return description; }
+
+        /**
+         * @return the stage this stage is timed within, or null if none.
+         */
+        public Stage getParent() {
+            switch (this) {
+            case LOAD:
+            case DRAW:
+                return RENDER;
+
+            case ROTATE:
+                return LOAD;
+
+            default:
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Latency histogram for a single stage.
+     */
+    private static class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            final long micros = nanos / 1000;
+            final int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+            min.accumulateAndGet(nanos, Math::min);
+            max.accumulateAndGet(nanos, Math::max);
+        }
+
+        long getCount() { return count.get(); }
+        long getTotal() { return total.get(); }
+        long getMin() { return count.get() == 0 ? 0 : min.get(); }
+        long getMax() { return max.get(); }
+
+        /**
+         * Estimate a percentile as the upper bound of the bucket it falls 
+         * in, limited to the largest recorded duration.
+         * 
+         * @param fraction of the durations that are less than the result.
+         * @return the estimated percentile in nanoseconds.
+         */
+        long getPercentile(double fraction) {
+            final long target = (long)Math.ceil(count.get() * fraction);
+            long seen = 0;
+
+            for (int b = 0; b < BUCKETS; ++b) {
+                seen += buckets.get(b);
+                if ((seen >= target) && (seen > 0))
+                    return Math.min(getUpperBound(b) * 1000, getMax());
+            }
+
+            return getMax();
+        }
+
+        long getBucket(int b) { return buckets.get(b); }
+    }
+
+    // The statistics of the generation each thread is working for, if any.
+    private static final ThreadLocal<GenerationStats> current = new ThreadLocal<GenerationStats>();
+
+    private Histogram[] histograms;
+    private long started = 0L;
+    private long finished = 0L;
+    private int cards = 0;
+
+
+    /**
+     * GenerationStats constructor.
+     */
+    public GenerationStats() {
+        reset();
+    }
+
+    /**
+     * Make the given statistics current for the calling thread, so that the 
+     * stages it runs are recorded in them.
+     * 
+     * @param stats to record in, or null to stop recording.
+     */
+    public static void setCurrent(GenerationStats stats) {
+        if (stats == null)
+            current.remove();
+        else
+            current.set(stats);
+    }
+
+    /**
+     * @return the current time, to be passed to record() once the stage 
+     * has finished.
+     */
+    public static long start() { return System.nanoTime(); }
+
+    /**
+     * Record the duration of a stage in the statistics that are current for 
+     * the calling thread. Does nothing if there are none, i.e. the stage is 
+     * not part of a generation.
+     * 
+     * @param stage that has finished.
+     * @param start time returned by start() when the stage began.
+     */
+    public static void record(Stage stage, long start) {
+        final GenerationStats stats = current.get();
+        if (stats != null)
+            stats.histograms[stage.ordinal()].record(System.nanoTime() - start);
+    }
+
+    /**
+     * @param b bucket index.
+     * @return the exclusive upper bound of the bucket in microseconds.
+     */
+    private static long getUpperBound(int b) { return 1L << b; }
+
+    private void reset() {
+        Histogram[] fresh = new Histogram[Stage.values().length];
+        for (int i = 0; i < fresh.length; ++i)
+            fresh[i] = new Histogram();
+
+        histograms = fresh;
+    }
+
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    /**
+     * Clear the statistics and start timing a new generation.
+     */
+    public void begin() {
+        reset();
+        cards = 0;
+        finished = 0L;
+        started = System.nanoTime();
+    }
+
+    /**
+     * Stop timing the generation.
+     * 
+     * @param count number of cards that were drawn and saved, excluding any 
+     * that were left as they were or failed.
+     */
+    public void end(int count) {
+        finished = System.nanoTime();
+        cards = count;
+    }
+
+    /**
+     * @return the number of cards given to end().
+     */
+    public int getCards() { return cards; }
+
+    /**
+     * @return the duration of the last generation in seconds.
+     */
+    public double getSeconds() {
+        final long end = finished == 0L ? System.nanoTime() : finished;
+
+        return (end - started) / 1e9;
+    }
+
+    /**
+     * @return the number of cards generated per second.
+     */
+    public double getCardsPerSecond() {
+        final double seconds = getSeconds();
+
+        return seconds > 0 ? cards / seconds : 0;
+    }
+
+    /**
+     * @param stage to get the time of.
+     * @return the total time of the stage, summed over every thread, less 
+     * the time of the stages timed within it.
+     */
+    private long getSelfTime(Stage stage) {
+        long self = histograms[stage.ordinal()].getTotal();
+        for (Stage child : Stage.values())
+            if (child.getParent() == stage)
+                self -= histograms[child.ordinal()].getTotal();
+
+        return Math.max(0, self);
+    }
+
+    /**
+     * @return the stage with the greatest time of its own, so that time 
+     * spent in a nested stage is only counted once.
+     */
+    private Stage getBusiestStage() {
+        Stage busiest = null;
+        long most = -1;
+        for (Stage stage : Stage.values()) {
+            final long total = getSelfTime(stage);
+            if (total > most) {
+                most = total;
+                busiest = stage;
+            }
+        }
+
+        return busiest;
+    }
+
+    /**
+     * @return a one line summary of the throughput, suitable for the status 
+     * message.
+     */
+    public String getSummary() {
+        return String.format("%d cards in %.2f s, %.1f cards/s, most time in %s", 
+            cards, getSeconds(), getCardsPerSecond(), getBusiestStage().getLabel());
+    }
+
+    /**
+     * @param stage to describe.
+     * @return a one line description of the latencies of the stage.
+     */
+    public String getStageSummary(Stage stage) {
+        final Histogram histogram = histograms[stage.ordinal()];
+
+        return String.format("%-9s %6d x  total %9.1f ms  p50 %8.3f ms  p90 %8.3f ms  p99 %8.3f ms  max %8.3f ms", 
+            stage.getLabel(), histogram.getCount(), histogram.getTotal() / 1e6, 
+            histogram.getPercentile(0.5) / 1e6, histogram.getPercentile(0.9) / 1e6, 
+            histogram.getPercentile(0.99) / 1e6, histogram.getMax() / 1e6);
+    }
+
+    /**
+     * Write the full report as JSON.
+     * 
+     * @param directory to write the report file in.
+     * @return true if the report was written, false otherwise.
+     */
+    public boolean writeReport(String directory) {
+        final String path = directory + File.separator + REPORT;
+
+        try (FileWriter writer = new FileWriter(path); BufferedWriter bw = new BufferedWriter(writer)) {
+            final String nl = System.lineSeparator();
+
+            bw.write("{" + nl);
+            bw.write("  \"cards\": " + cards + "," + nl);
+            bw.write(String.format(Locale.ROOT, "  \"seconds\": %.6f,", getSeconds()) + nl);
+            bw.write(String.format(Locale.ROOT, "  \"cardsPerSecond\": %.3f,", getCardsPerSecond()) + nl);
+            bw.write("  \"stages\": {" + nl);
+
+            final Stage[] stages = Stage.values();
+            for (int i = 0; i < stages.length; ++i) {
+                final Histogram histogram = histograms[stages[i].ordinal()];
+
+                bw.write("    \"" + stages[i].getLabel() + "\": {" + nl);
+                bw.write("      \"description\": \"" + stages[i].getDescription() + "\"," + nl);
+                bw.write("      \"count\": " + histogram.getCount() + "," + nl);
+                bw.write("      \"totalMs\": " + toMillis(histogram.getTotal()) + "," + nl);
+                bw.write("      \"selfMs\": " + toMillis(getSelfTime(stages[i])) + "," + nl);
+                bw.write("      \"minMs\": " + toMillis(histogram.getMin()) + "," + nl);
+                bw.write("      \"p50Ms\": " + toMillis(histogram.getPercentile(0.5)) + "," + nl);
+                bw.write("      \"p90Ms\": " + toMillis(histogram.getPercentile(0.9)) + "," + nl);
+                bw.write("      \"p99Ms\": " + toMillis(histogram.getPercentile(0.99)) + "," + nl);
+                bw.write("      \"maxMs\": " + toMillis(histogram.getMax()) + "," + nl);
+                bw.write("      \"histogram\": [");
+
+                // Only the buckets with entries, as "under this many microseconds".
+                String separator = "";
+                for (int b = 0; b < BUCKETS; ++b) {
+                    final long count = histogram.getBucket(b);
+                    if (count == 0)
+                        continue;
+
+                    bw.write(separator + "{ \"underUs\": " + getUpperBound(b) + ", \"count\": " + count + " }");
+                    separator = ", ";
+                }
+
+                bw.write("]" + nl);
+                bw.write("    }" + (i < stages.length - 1 ? "," : "") + nl);
+            }
+
+            bw.write("  }" + nl);
+            bw.write("}" + nl);
+        } catch (IOException e) {
+            Debug.critical(DD, "writeReport() - Failed writing " + path + ": " + e);
+
+            return false;
+        }
+
+        return true;
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+}
@@ -0,0 +1,183 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * IconCache is a thread-safe cache of icons that have been scaled to the
+ * size they are drawn at, used for the life of a single generation. Icons
+ * are keyed by source image and target size in pixels. The rotated icons are
+ * separate source images, so the rotation is part of the key. Each icon is
+ * resampled once, in high quality, and then copied onto every card it
+ * appears on without further scaling. The cache holds at most a fixed
+ * number of bytes of pixel data; once full, icons are still scaled but no
+ * longer kept.
+ */
+package phillockett65.CardCreate2;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javafx.scene.image.Image;
+
+
+public class IconCache {
+
+    /**
+     * Cache key, matching the source image by identity as the decoded
+     * images are shared through the ImageCache.
+     */
+    private static class Key {
+        private final Image source;
+        private final int width;
+        private final int height;
+
+        Key(Image source, int width, int height) {
+            this.source = source;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key))
+                return false;
+
+            final Key key = (Key)other;
+
+            return source == key.source && width == key.width && height == key.height;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(source) * 31 + width) * 31 + height;
+        }
+    }
+
+    private final long budget;
+    private final AtomicLong used = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private final Map<Key, BufferedImage> icons = new ConcurrentHashMap<Key, BufferedImage>();
+
+
+    /**
+     * IconCache constructor.
+     *
+     * @param budget maximum number of bytes of pixel data to hold.
+     */
+    public IconCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * IconCache constructor using a budget of an eighth of the maximum heap,
+     * up to 256MB.
+     */
+    public IconCache() {
+        this(Math.min(256L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 8));
+    }
+
+    /**
+     * @return a one line summary of the cache usage.
+     */
+    public String getStatistics() {
+        return String.format("Icon cache: %d hits, %d misses, %d icons, %dKB of %dKB",
+            hits.get(), misses.get(), icons.size(), used.get() / 1024, budget / 1024);
+    }
+
+    /**
+     * Get the icon for the given source image scaled to the given size,
+     * scaling it if it is not cached.
+     *
+     * @param source image that the icon is drawn from.
+     * @param image the source image converted to a BufferedImage.
+     * @param width of the icon in pixels.
+     * @param height of the icon in pixels.
+     * @return the scaled icon.
+     */
+    public BufferedImage get(Image source, BufferedImage image, int width, int height) {
+        final Key key = new Key(source, width, height);
+
+        BufferedImage icon = icons.get(key);
+        if (icon != null) {
+            hits.incrementAndGet();
+
+            return icon;
+        }
+
+        // Two threads may scale the same icon, but only one copy is kept.
+        misses.incrementAndGet();
+        icon = scale(image, width, height);
+
+        final long bytes = 4L * width * height;
+        if (used.addAndGet(bytes) > budget) {
+            used.addAndGet(-bytes);
+
+            return icon;
+        }
+
+        final BufferedImage previous = icons.putIfAbsent(key, icon);
+        if (previous != null) {
+            used.addAndGet(-bytes);
+
+            return previous;
+        }
+
+        return icon;
+    }
+
+    /**
+     * Scale an image in high quality. Large reductions are made in steps of
+     * at most a half, so that every source pixel contributes to the result.
+     *
+     * @param source image to scale.
+     * @param width of the scaled image in pixels.
+     * @param height of the scaled image in pixels.
+     * @return the scaled image, with premultiplied alpha.
+     */
+    private static BufferedImage scale(BufferedImage source, int width, int height) {
+        BufferedImage current = source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+
+        do {
+            w = w > width ? Math.max(w / 2, width) : width;
+            h = h > height ? Math.max(h / 2, height) : height;
+
+            BufferedImage next = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g2d = next.createGraphics();
+            g2d.setComposite(AlphaComposite.Src);
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2d.drawImage(current, 0, 0, w, h, null);
+            g2d.dispose();
+
+            current = next;
+        } while (w != width || h != height);
+
+        return current;
+    }
+
+}
@@ -0,0 +1,268 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ImageCache is a thread-safe cache of decoded images shared by the preview 
+ * and card generation. Images are keyed by file path and modification time, 
+ * so an edited file is decoded again. The 180 degree rotated version of an 
+ * image is built on first use and kept in the same entry as the source. The 
+ * cache holds at most a fixed number of bytes of pixel data and evicts the 
+ * least recently used images first.
+ */
+package phillockett65.CardCreate2;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javafx.scene.image.Image;
+
+import phillockett65.Debug.Debug;
+
+public class ImageCache {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    private static ImageCache cache = new ImageCache(defaultBudget());
+
+    /**
+     * Cache entry, holding the decoded image, its rotated version if it has 
+     * been asked for, and the modification time of the file it was decoded 
+     * from.
+     */
+    private static class Entry {
+        final long modified;
+        final Image image;
+        Image rotated = null;
+        long bytes;
+
+        Entry(long modified, Image image) {
+            this.modified = modified;
+            this.image = image;
+            bytes = sizeOf(image);
+        }
+    }
+
+    private final long budget;
+    private long used = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    // Access ordered, so iteration starts at the least recently used entry.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+
+
+    /**
+     * ImageCache constructor. Package-private so that tests can use a 
+     * small budget.
+     * 
+     * @param budget maximum number of bytes of pixel data to hold.
+     */
+    ImageCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Singleton implementation.
+     * @return the only instance of the cache.
+     */
+    public static ImageCache getInstance() { return cache; }
+
+    /**
+     * @return a budget of a quarter of the maximum heap, up to 512MB.
+     */
+    private static long defaultBudget() {
+        return Math.min(512L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    /**
+     * @return the number of bytes of pixel data used by the given image.
+     */
+    private static long sizeOf(Image image) {
+        return 4L * (long)image.getWidth() * (long)image.getHeight();
+    }
+
+    public long getBudget() { return budget; }
+    public synchronized long getUsed() { return used; }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized int getSize() { return entries.size(); }
+
+    /**
+     * @return a one line summary of the cache usage.
+     */
+    public synchronized String getStatistics() {
+        return String.format("Image cache: %d hits, %d misses, %d images, %dKB of %dKB", 
+            hits, misses, entries.size(), used / 1024, budget / 1024);
+    }
+
+    /**
+     * Get the decoded image for the given file, decoding it if it is not 
+     * cached or the file has changed since it was cached.
+     * 
+     * @param file to get the image for.
+     * @return the Image, or null if the file could not be decoded.
+     */
+    public Image get(File file) {
+        Entry entry = lookup(file);
+
+        return entry == null ? null : entry.image;
+    }
+
+    /**
+     * Get the decoded image for the given file rotated by 180 degrees. The 
+     * rotation is only done the first time it is asked for while the file 
+     * is unchanged and the entry has not been evicted.
+     * 
+     * @param file to get the rotated image for.
+     * @return the rotated Image, or null if the file could not be decoded.
+     */
+    public Image getRotated(File file) {
+        Entry entry = lookup(file);
+        if (entry == null)
+            return null;
+
+        synchronized (this) {
+            if (entry.rotated != null)
+                return entry.rotated;
+        }
+
+        // Rotate outside of the lock so other threads are not held up.
+        Image rotated = Utils.rotateImage(entry.image);
+
+        synchronized (this) {
+            if (entry.rotated != null)
+                return entry.rotated;
+
+            entry.rotated = rotated;
+
+            // Only account for the rotated image if the entry is still cached.
+            if (entries.get(file.getPath()) == entry) {
+                final long bytes = sizeOf(rotated);
+                entry.bytes += bytes;
+                used += bytes;
+                evict();
+            }
+        }
+
+        return rotated;
+    }
+
+    /**
+     * Find the entry for the given file, decoding the file if it is not 
+     * cached or has changed since it was cached.
+     * 
+     * @param file to find the entry for.
+     * @return the Entry, or null if the file could not be decoded.
+     */
+    private Entry lookup(File file) {
+        final String key = file.getPath();
+        final long modified = file.lastModified();
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.modified == modified) {
+                hits++;
+
+                return entry;
+            }
+            misses++;
+        }
+
+        // Decode outside of the lock so other threads are not held up.
+        Image image = decode(file);
+        if (image == null)
+            return null;
+
+        Entry entry = new Entry(modified, image);
+        put(key, entry);
+
+        return entry;
+    }
+
+    /**
+     * Decode the given image file.
+     * 
+     * @param file to decode.
+     * @return the Image, or null if the file could not be decoded.
+     */
+    private static Image decode(File file) {
+        try (InputStream stream = new FileInputStream(file)) {
+            Image image = new Image(stream);
+            if (image.isError()) {
+                Debug.major(DD, "decode(" + file.getPath() + ") - " + image.getException());
+
+                return null;
+            }
+
+            return image;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * Add an entry, replacing any stale entry for the same file, then evict 
+     * the least recently used entries until the cache is within budget.
+     * Images larger than the whole budget are not cached.
+     */
+    private synchronized void put(String key, Entry entry) {
+        Entry old = entries.remove(key);
+        if (old != null)
+            used -= old.bytes;
+
+        if (entry.bytes > budget)
+            return;
+
+        entries.put(key, entry);
+        used += entry.bytes;
+        evict();
+    }
+
+    /**
+     * Evict the least recently used entries until the cache is within budget.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (used > budget && it.hasNext()) {
+            Entry lru = it.next().getValue();
+            used -= lru.bytes;
+            it.remove();
+        }
+    }
+
+    /**
+     * Remove all entries and reset the counters.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        used = 0;
+        hits = 0;
+        misses = 0;
+    }
+
+}
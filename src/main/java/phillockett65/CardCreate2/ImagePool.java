@@ -0,0 +1,134 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ImagePool is a pool of full-size card images shared by the render and
+ * write stages of a Pipeline. A render worker takes an image, draws the card
+ * straight into it and passes it on, and the write worker reads the same
+ * pixels and returns the image to the pool once the card has been saved. An
+ * image is only created when every existing one is in use, so the pool never
+ * holds more images than there are cards in flight, and no image is
+ * allocated per card once the pipeline is full.
+ */
+package phillockett65.CardCreate2;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javafx.scene.image.WritableImage;
+
+
+public class ImagePool {
+
+    private final int width;
+    private final int height;
+
+    private final Queue<BufferedImage> images = new ConcurrentLinkedQueue<BufferedImage>();
+    private final Queue<WritableImage> snapshots = new ConcurrentLinkedQueue<WritableImage>();
+    private final AtomicInteger created = new AtomicInteger();
+
+    /**
+     * ImagePool constructor.
+     *
+     * @param width of the images in pixels.
+     * @param height of the images in pixels.
+     */
+    public ImagePool(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @return the number of images created by the pool.
+     */
+    public int getCreatedCount() { return created.get(); }
+
+
+    /************************************************************************
+     * Support code for headless rendering.
+     */
+
+    /**
+     * Take a cleared ARGB image to draw a card on. The pixels are held in a
+     * single int[] so that they can be read a row at a time without being
+     * converted.
+     *
+     * @return an image of the pool size with every pixel transparent.
+     */
+    public BufferedImage takeImage() {
+        final BufferedImage image = images.poll();
+        if (image == null) {
+            created.incrementAndGet();
+
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        Arrays.fill(((DataBufferInt)image.getRaster().getDataBuffer()).getData(), 0);
+
+        return image;
+    }
+
+    /**
+     * Return an image to the pool once it is no longer being read.
+     *
+     * @param image taken from takeImage(), may be null.
+     */
+    public void release(BufferedImage image) {
+        if (image != null && image.getWidth() == width && image.getHeight() == height)
+            images.add(image);
+    }
+
+
+    /************************************************************************
+     * Support code for Canvas rendering.
+     */
+
+    /**
+     * Take an image to snapshot a card Canvas into. The snapshot overwrites
+     * every pixel so the image is not cleared.
+     *
+     * @return an image of the pool size.
+     */
+    public WritableImage takeSnapshot() {
+        final WritableImage image = snapshots.poll();
+        if (image == null) {
+            created.incrementAndGet();
+
+            return new WritableImage(width, height);
+        }
+
+        return image;
+    }
+
+    /**
+     * Return a snapshot image to the pool once it is no longer being read.
+     *
+     * @param image taken from takeSnapshot(), may be null.
+     */
+    public void release(WritableImage image) {
+        if (image != null)
+            snapshots.add(image);
+    }
+
+}
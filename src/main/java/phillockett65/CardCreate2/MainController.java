@@ -24,22 +24,21 @@
  */
 package phillockett65.CardCreate2;
 
-import javafx.application.Platform;
-
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Optional;
 
+import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.scene.SnapshotParameters;
-import javafx.scene.canvas.Canvas;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Label;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.ProgressBar;
-import javafx.scene.image.Image;
-import javafx.scene.image.WritableImage;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
@@ -49,6 +48,7 @@ import javafx.scene.shape.Line;
 import javafx.scene.shape.StrokeLineCap;
 import javafx.stage.DirectoryChooser;
 import javafx.stage.Stage;
+import phillockett65.CardCreate2.sample.Default;
 import phillockett65.Debug.Debug;
 
 
@@ -350,139 +350,167 @@ public class MainController {
      * Support code for "Generate" panel. 
      */
 
-    private Canvas currentCanvas;
-    private Generate generateTask;
-
-    private Image currentImage;
-    private Write writeTask;
-
+    private Pipeline pipeline;
     private Long progress = 0L;
- 
-    private int width;
-    private int height;
-    private SnapshotParameters parameters;
-    private Image mask;
-
-    private int defaults = 0;
-
-    private void finaliseSize() {
-
-        if (!model.isMpcCardSize()) {
-            width = (int)model.getWidth();
-            height = (int)model.getHeight();
-        } else {
-            final double xOffset = model.getMpcBorderWidth();
-            final double yOffset = model.getMpcBorderHeight();
-
-            width = (int)(model.getWidth() + (xOffset * 2));
-            height = (int)(model.getHeight() + (yOffset * 2));
-        }
-    }
 
-    private Image getMask() {
-        Image mask = null;
-
-        if (model.isCropCorners()) {
-            final double width = model.getWidth();
-            final double height = model.getHeight();
-            final double arcWidth = model.getArcWidthPX();
-            final double arcHeight = model.getArcHeightPX();
-            
-            mask = Utils.createMask(width, height, arcWidth, arcHeight);
-        }
+    // The card sizes still to generate in the current job, the number of 
+    // decks in the job and the totals of the decks that have finished.
+    private final Deque<String> sizes = new ArrayDeque<String>();
+    private int decks = 1;
+    private String jobDirectory;
+    private IconCache icons;
+    private int jobWritten = 0;
+    private int jobUnchanged = 0;
+    private int jobIdentical = 0;
 
-        return mask;
+    /**
+     * @return true if a deck is currently being generated, false otherwise.
+     */
+    private boolean isGenerationRunning() {
+        return pipeline != null;
     }
 
-
+    /**
+     * Start generating the deck at each selected card size, or at the 
+     * current size if none are selected. The decks are generated one after 
+     * another as a single job, sharing the scaled icons, and each selected 
+     * size is sent to its own sub-directory. Progress is reported by the 
+     * Pipeline.Listener callbacks on the Application thread.
+     */
     public void startGeneration() {
-        if (generateTask != null && generateTask.isRunning())
+        if (isGenerationRunning())
             return;
 
-        if (writeTask != null && writeTask.isRunning())
-            return;
+        sizes.clear();
+        sizes.addAll(model.getGenerationSizes());
+        decks = Math.max(1, sizes.size());
+        jobDirectory = model.getOutputDirectory();
+        icons = new IconCache();
+        jobWritten = 0;
+        jobUnchanged = 0;
+        jobIdentical = 0;
 
         progress = 0L;
         showProgress();
+        progressBar.setProgress(0);
 
-        finaliseSize();
-        mask = getMask();
-
-        model.startGenerate();
-        invokeDrawTask();
+        startDeck(sizes.poll());
     }
 
     /**
-     * Step 1: use a Generate task to draw the current card onto currentCanvas.
-     * When completed the valueProperty changed() handler is called, to 
-     * invokeSaveTask().
+     * Start generating the next deck of the job. The card size and output 
+     * directory are only changed while the Pipeline captures the settings.
+     * 
+     * @param size name of the card size, or null for the current size.
      */
-    private void invokeDrawTask() {
- 
-        generateTask = new Generate(progress, defaults);
-        generateTask.valueProperty().addListener( (v, oldValue, newValue) -> {
-            progress = newValue;
-            currentCanvas = generateTask.getCanvas();
-            defaults = generateTask.getDefaults();
-            Platform.runLater(() -> invokeSaveTask()); 
-        });
-        progressBar.progressProperty().bind(generateTask.progressProperty());
+    private void startDeck(String size) {
+        final String currentSize = model.getCardSizeName();
+        if (size != null) {
+            model.setCardSize(size);
+            model.setOutputDirectory(jobDirectory + File.separator + size);
+        }
 
-        Thread th = new Thread(generateTask);
-        th.setDaemon(true);
-        th.start();
-    }
- 
-    /**
-     * Step 2: take a snapshot of the currentCanvas to produce currentImage.
-     * Note: must be run from the Application thread.
-     */
-    private void takeSnapshot() {
+        model.startGenerate();
 
-        WritableImage snapshot = new WritableImage(width, height);
+        final GenerationExecutor executor = model.getExecutor();
         try {
-            currentCanvas.snapshot(parameters, snapshot);
-        } catch (IllegalStateException e) {
-            Debug.critical(DD, "takeSnapshots() - Failed to take snapshot: " + e);
+            pipeline = new Pipeline(new Pipeline.Listener() {
+
+                @Override
+                public void stepCompleted() {
+                    progressStep();
+                }
+
+                @Override
+                public void pipelineFinished() {
+                    generationFinished();
+                }
+            }, executor, executor.getRenderThreads(), icons);
+        } catch (IOException | RuntimeException e) {
+            Debug.critical(DD, "startDeck() - Failed starting generation: " + e);
+            pipeline = null;
+            model.finishGenerate();
+            hideProgress();
+            setStatusMessage("Generation failed: " + e.getMessage());
+
+            return;
+        } finally {
+            if (size != null) {
+                model.setOutputDirectory(null);
+                model.setCardSize(currentSize);
+            }
         }
 
-        currentImage = snapshot;
+        syncQueueLabel();
+
+        pipeline.start();
     }
- 
+
     /**
-     * Step 3: takeSnapshot() then use a Write task to save currentImage to 
-     * disc. When completed the valueProperty changed() handler is called to
-     * check if there are more cards to draw and save. If there are more cards 
-     * we invokeDrawTask() on the next card, otherwise generationFinished();
+     * Cancel the deck currently being generated, if any, and the rest of 
+     * the job. The clean up is done by generationFinished() once the 
+     * Pipeline has stopped.
      */
-    private void invokeSaveTask() {
-
-        takeSnapshot();
+    public void cancelGeneration() {
+        if (!isGenerationRunning())
+            return;
 
-        writeTask = new Write(progress, mask, currentImage);
-        writeTask.valueProperty().addListener( (v, oldValue, newValue) -> {
-            progress = newValue;
-            if (model.nextCardIndex()) {
-                Platform.runLater(() -> invokeDrawTask());
-            } else {
-                Platform.runLater(() -> generationFinished());
-            }
-        });
-        progressBar.progressProperty().bind(writeTask.progressProperty());
+        sizes.clear();
+        pipeline.cancel();
+        cancelButton.setDisable(true);
+        queueLabel.setText("Cancelling...");
+    }
 
-        Thread th = new Thread(writeTask);
-        th.setDaemon(true);
-        th.start();
+    /**
+     * Update the progress bar and the queue depths after a stage has 
+     * finished with a card.
+     */
+    private void progressStep() {
+        progress++;
+        progressBar.setProgress((double)progress / (Default.GENERATE_STEPS.getInt() * decks));
+        syncQueueLabel();
     }
- 
+
     /**
-     * Step 4: final clean up.
+     * Start the next deck of the job, or do the final clean up.
      */
     private void generationFinished() {
+        final boolean cancelled = pipeline.isCancelled();
+        final int written = pipeline.getWrittenCount();
+        final int unchanged = pipeline.getUnchangedCount();
+        final int identical = pipeline.getIdenticalCount();
+        final GenerationStats stats = pipeline.getStats();
+        Debug.info(DD, "generationFinished() - " + unchanged + " unchanged, " + 
+            identical + " identical, " + written + " written");
+        pipeline = null;
         model.finishGenerate();
+
+        jobWritten += written;
+        jobUnchanged += unchanged;
+        jobIdentical += identical;
+
+        if ((!cancelled) && (!sizes.isEmpty())) {
+            startDeck(sizes.poll());
+
+            return;
+        }
+
+        Debug.info(DD, "generationFinished() - " + icons.getStatistics());
+        icons = null;
         hideProgress();
 
-        setStatusMessage("Output sent to: " + model.getOutputDirectory());
+        if (cancelled)
+            setStatusMessage("Generation cancelled, " + jobWritten + " cards written to: " + 
+                jobDirectory);
+        else if (decks > 1)
+            setStatusMessage("Output sent to: " + jobDirectory + " at " + decks + " sizes" + 
+                " (" + jobWritten + " written, " + jobUnchanged + " kept as unchanged, " + 
+                jobIdentical + " identical)");
+        else
+            setStatusMessage("Output sent to: " + jobDirectory + 
+                " (" + written + " written, " + unchanged + " kept as unchanged, " + 
+                identical + " identical) " + 
+                stats.getSummary());
     }
  
 
@@ -490,8 +518,6 @@ public class MainController {
      * Initialize"Generate" panel.
     */
     private void initializeGenerate() {
-        parameters = new SnapshotParameters();
-        parameters.setFill(Color.TRANSPARENT);
     }
  
 
@@ -513,6 +539,17 @@ public class MainController {
     @FXML
     private ProgressBar progressBar;
 
+    @FXML
+    private Label queueLabel;
+
+    @FXML
+    private Button cancelButton;
+
+    @FXML
+    void cancelButtonActionPerformed(ActionEvent event) {
+        cancelGeneration();
+    }
+
 
     /**
      * Update the status line message.
@@ -524,24 +561,43 @@ public class MainController {
 
 
     /**
-     * Update the state of the progress bar, the status line and the generate 
-     * button.
+     * Show the number of cards waiting in and being processed by each stage 
+     * of the pipeline, to help identify which stage is the bottleneck.
+     */
+    private void syncQueueLabel() {
+        if ((pipeline == null) || (pipeline.isCancelled()))
+            return;
+
+        queueLabel.setText(String.format("Render: %d waiting, %d active  Encode: %d/%d queued, %d active",
+            pipeline.getRenderQueueDepth(), pipeline.getRenderActive(),
+            pipeline.getEncodeQueueDepth(), pipeline.getEncodeQueueCapacity(),
+            pipeline.getEncodeActive()));
+    }
+
+    /**
+     * Update the state of the progress bar, the status line, the cancel 
+     * button and the generate button.
      */
     private void showProgressState(boolean state) {
         primaryTabController.disableGenerateButton(state);
         statusLabel.setVisible(!state);
         progressBar.setVisible(state);
+        queueLabel.setVisible(state);
+        cancelButton.setVisible(state);
+        cancelButton.setDisable(!state);
     }
 
     /**
-     * Show the progress bar, hide the status and disable the generate button.
+     * Show the progress bar and cancel button, hide the status and disable 
+     * the generate button.
      */
     private void showProgress() {
         showProgressState(true);
     }
 
     /**
-     * Hide the progress bar, show the status and enable the generate button.
+     * Hide the progress bar and cancel button, show the status and enable 
+     * the generate button.
      */
     private void hideProgress() {
         showProgressState(false);
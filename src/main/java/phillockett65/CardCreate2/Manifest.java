@@ -0,0 +1,328 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Manifest records what each card in an output directory was generated from,
+ * so that only the cards whose inputs have changed need to be generated 
+ * again. For each card it stores a hash of the settings the card uses and 
+ * the size and modification time of every source file the card was drawn 
+ * from. It also stores the size and modification time of the saved file, so 
+ * that a card that has been edited or damaged since it was saved is 
+ * generated again, along with a hash of its pixels if they were hashed, so 
+ * that saving identical pixels again can be skipped. The manifest is saved 
+ * as a tab separated text file in the output directory.
+ */
+package phillockett65.CardCreate2;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import phillockett65.Debug.Debug;
+
+
+public class Manifest {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    public static final String FILENAME = "manifest.txt";
+
+    /**
+     * The size and modification time of a source file.
+     */
+    public static class Source {
+        private final String path;
+        private final long size;
+        private final long modified;
+
+        private Source(String path, long size, long modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        /**
+         * Capture the current state of the given file. A missing file is 
+         * recorded with a size of -1.
+         */
+        public static Source of(String path) {
+            File file = new File(path);
+            if (!file.exists())
+                return new Source(path, -1, 0);
+
+            return new Source(path, file.length(), file.lastModified());
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Source))
+                return false;
+
+            Source source = (Source)other;
+
+            return path.equals(source.path) && size == source.size && modified == source.modified;
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode() ^ Long.hashCode(size) ^ Long.hashCode(modified);
+        }
+    }
+
+    /**
+     * What a card was generated from.
+     */
+    public static class Entry {
+        private final String settings;
+        private final List<Source> sources;
+
+        public Entry(String settings, List<Source> sources) {
+            this.settings = settings;
+            this.sources = sources;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Entry))
+                return false;
+
+            Entry entry = (Entry)other;
+
+            return settings.equals(entry.settings) && sources.equals(entry.sources);
+        }
+
+        @Override
+        public int hashCode() {
+            return settings.hashCode() ^ sources.hashCode();
+        }
+    }
+
+    /**
+     * The state of the file of a saved card and the hash of its pixels, 
+     * which may be null.
+     */
+    private static class Content {
+        private final String hash;
+        private final Source file;
+
+        private Content(String hash, Source file) {
+            this.hash = hash;
+            this.file = file;
+        }
+    }
+
+    private static final String NONE = "-";
+
+    private final String path;
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<Integer, Entry>();
+    private final Map<Integer, Content> contents = new ConcurrentHashMap<Integer, Content>();
+
+
+    /**
+     * Manifest constructor.
+     * 
+     * @param directory the output directory that the manifest describes.
+     */
+    public Manifest(String directory) {
+        path = directory + File.separator + FILENAME;
+    }
+
+    /**
+     * Check if a card was generated from the same settings and source files 
+     * as given.
+     * 
+     * @param id position in the deck of the card.
+     * @param entry describing the current inputs of the card.
+     * @return true if the card is up to date, false otherwise.
+     */
+    public boolean isCurrent(int id, Entry entry) {
+        return entry.equals(entries.get(id));
+    }
+
+    /**
+     * Record the inputs a card has been generated from.
+     * 
+     * @param id position in the deck of the card.
+     * @param entry describing the inputs of the card.
+     */
+    public void update(int id, Entry entry) {
+        entries.put(id, entry);
+    }
+
+    /**
+     * Forget the inputs of a card, so that it will be generated next time.
+     * 
+     * @param id position in the deck of the card.
+     */
+    public void remove(int id) {
+        entries.remove(id);
+    }
+
+    /**
+     * Check that the saved file of a card has not changed since it was 
+     * saved, i.e. it still exists with the recorded size and modification 
+     * time.
+     * 
+     * @param id position in the deck of the card.
+     * @param outputPath file path of the saved card.
+     * @return true if the saved file is as it was saved, false otherwise.
+     */
+    public boolean isOutputCurrent(int id, String outputPath) {
+        final Content content = contents.get(id);
+        if (content == null || content.file.size < 0)
+            return false;
+
+        final Source file = Source.of(outputPath);
+
+        return content.file.size == file.size && content.file.modified == file.modified;
+    }
+
+    /**
+     * Get the hash of the pixels of a saved card, provided the saved file 
+     * has not changed since the hash was recorded.
+     * 
+     * @param id position in the deck of the card.
+     * @param outputPath file path of the saved card.
+     * @return the hash, or null if unknown or the file has changed.
+     */
+    public String getContentHash(int id, String outputPath) {
+        if (!isOutputCurrent(id, outputPath))
+            return null;
+
+        return contents.get(id).hash;
+    }
+
+    /**
+     * Record the state of the saved file of a card and the hash of its 
+     * pixels. Must be called after the file has been saved.
+     * 
+     * @param id position in the deck of the card.
+     * @param hash of the pixels, or null if the pixels were not hashed.
+     * @param outputPath file path of the saved card.
+     */
+    public void setContentHash(int id, String hash, String outputPath) {
+        contents.put(id, new Content(hash, Source.of(outputPath)));
+    }
+
+    /**
+     * Read the manifest from disc. A missing or unreadable manifest is 
+     * treated as empty.
+     * 
+     * @return true if the manifest was read, false otherwise.
+     */
+    public boolean read() {
+        entries.clear();
+        contents.clear();
+
+        File file = new File(path);
+        if (!file.exists())
+            return false;
+
+        // Each line is: id, settings hash, content hash, size and modified 
+        // of the saved file, then path, size and modified for each source 
+        // file. Unknown hashes are recorded as NONE and an unknown saved 
+        // file as a size and modified of 0.
+        try (FileReader reader = new FileReader(file); BufferedReader br = new BufferedReader(reader)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                final String[] fields = line.split("\t");
+                if (fields.length < 5 || (fields.length - 5) % 3 != 0)
+                    continue;
+
+                final int id = Integer.parseInt(fields[0]);
+
+                if (!fields[1].equals(NONE)) {
+                    List<Source> sources = new ArrayList<Source>();
+                    for (int i = 5; i < fields.length; i += 3)
+                        sources.add(new Source(fields[i], Long.parseLong(fields[i+1]), Long.parseLong(fields[i+2])));
+
+                    entries.put(id, new Entry(fields[1], sources));
+                }
+
+                final long size = Long.parseLong(fields[3]);
+                final long modified = Long.parseLong(fields[4]);
+                if (!fields[2].equals(NONE) || size != 0 || modified != 0) {
+                    final String hash = fields[2].equals(NONE) ? null : fields[2];
+                    contents.put(id, new Content(hash, new Source("", size, modified)));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            Debug.major(DD, "read() - Failed reading manifest: " + e);
+            entries.clear();
+            contents.clear();
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Write the manifest to disc.
+     * 
+     * @return true if the manifest was saved, false otherwise.
+     */
+    public boolean write() {
+        try (FileWriter writer = new FileWriter(path); BufferedWriter bw = new BufferedWriter(writer)) {
+            TreeSet<Integer> ids = new TreeSet<Integer>(entries.keySet());
+            ids.addAll(contents.keySet());
+
+            for (Integer id : ids) {
+                final Entry entry = entries.get(id);
+                final Content content = contents.get(id);
+                StringBuilder line = new StringBuilder();
+
+                line.append(id);
+                line.append('\t').append(entry == null ? NONE : entry.settings);
+
+                if (content == null)
+                    line.append('\t').append(NONE).append("\t0\t0");
+                else
+                    line.append('\t').append(content.hash == null ? NONE : content.hash)
+                        .append('\t').append(content.file.size)
+                        .append('\t').append(content.file.modified);
+
+                if (entry != null)
+                    for (Source source : entry.sources)
+                        line.append('\t').append(source.path)
+                            .append('\t').append(source.size)
+                            .append('\t').append(source.modified);
+
+                bw.write(line + System.lineSeparator());
+            }
+        } catch (IOException e) {
+            Debug.critical(DD, "write() - Failed saving manifest: " + e);
+
+            return false;
+        }
+
+        return true;
+    }
+
+}
@@ -27,17 +27,17 @@ package phillockett65.CardCreate2;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.Group;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.SpinnerValueFactory;
 import javafx.scene.control.Tooltip;
 import javafx.scene.image.Image;
@@ -106,8 +106,16 @@ public class Model {
     public static Model getInstance() { return model; }
 
     public void close() {
-        sample.close();
-        stage.close();
+        // Stop any deck being generated so that no partial files are left.
+        if (mainController != null)
+            mainController.cancelGeneration();
+        executor.shutdown();
+
+        // There is no window when generating from the command line.
+        if (sample != null)
+            sample.close();
+        if (stage != null)
+            stage.close();
     }
 
     /**
@@ -161,6 +169,27 @@ public class Model {
         sample.init();
     }
 
+    /**
+     * Initialization after a base directory has been selected when there 
+     * are no controllers or "Sample" window, i.e. when generating from the 
+     * command line. The card items are set up exactly as they are for 
+     * init() so that the generated cards are the same.
+     */
+    public void initWithoutUI() {
+        Debug.trace(DD, "Model initWithoutUI()");
+
+        watermarkView = new ImageView();
+        group.getChildren().add(watermarkView);
+
+        setWatermark();
+
+        initializeCardItemPayloads();
+        makeCardsDirectory();
+
+        group.getChildren().add(box);
+        group.getChildren().add(handle);
+    }
+
     /**
      * Synchronise all controls with the model.
      */
@@ -311,22 +340,9 @@ public class Model {
     }
 
     private void setWatermark() {
-        final String path = getFaceDirectory() + "\\Watermark.png";
-        File file = new File(path);
-
-        if (!file.exists()) {
-            watermarkView.setImage(null);
-            watermarkImage = null;
-
-            return;
-        }
-
-        try {
-            watermarkImage = new Image(new FileInputStream(file));
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        }
+        final String path = getFaceDirectory() + File.separator + "Watermark.png";
 
+        watermarkImage = Utils.loadImage(path);
         watermarkView.setImage(watermarkImage);
     }
 
@@ -508,15 +524,15 @@ public class Model {
     }
 
     private String getFaceDirectory() {
-        return baseDirectory + "\\faces\\" + faceStyle;
+        return baseDirectory + File.separator + "faces" + File.separator + faceStyle;
     }
 
     public String getIndexDirectory() {
-        return baseDirectory + "\\indices\\" + indexStyle;
+        return baseDirectory + File.separator + "indices" + File.separator + indexStyle;
     }
 
     private String getPipDirectory() {
-        return baseDirectory + "\\pips\\" + pipStyle;
+        return baseDirectory + File.separator + "pips" + File.separator + pipStyle;
     }
 
     public String getFaceStyle()  { return faceStyle; }
@@ -632,13 +648,13 @@ public class Model {
 
     private boolean fillDirectoryList(ObservableList<String> styleList, String directory, String item) {
 
-        String directoryName = directory + "\\" + item;
+        String directoryName = directory + File.separator + item;
         final File style= new File(directoryName);
 
         styleList.clear();
         for (final File styleEntry : style.listFiles()) {
             if (styleEntry.isDirectory()) {
-                Debug.info(DD, directoryName + "\\" + styleEntry.getName());
+                Debug.info(DD, directoryName + File.separator + styleEntry.getName());
                 styleList.add(styleEntry.getName());
             }
         }
@@ -723,53 +739,24 @@ public class Model {
 
     private boolean generating = false;
 
-    private int currentIndex = 0;
-    private Image[] images;
+    private GenerationSpec spec = null;
 
     public boolean isGenerating() { return generating; }
     private void setGenerating(boolean state) { generating = state; }
 
     public final Color border = Color.GREY;
 
-    public void drawCardIndex(GraphicsContext gc, Image image, Image rotatedImage) {
-        index.drawCard(gc, image, rotatedImage);
-    }
-
-    public void drawCardCornerPip(GraphicsContext gc, Image image, Image rotatedImage) {
-        cornerPip.drawCard(gc, image, rotatedImage);
-    }
-
-    public void drawCardFace(GraphicsContext gc, Image image, Image rotatedImage) {
-        face.drawCard(gc, image, rotatedImage);
-    }
-
-    public void drawCardStandardPip(GraphicsContext gc, Image image, Image rotatedImage, int pattern) {
-        standardPip.drawCard(gc, image, rotatedImage, pattern);
-    }
-
-    public void drawCardFacePip(GraphicsContext gc, Image image, Image rotatedImage) {
-        facePip.drawCard(gc, image, rotatedImage);
-    }
-
-    public void drawJokerIndex(GraphicsContext gc, Image image, Image rotatedImage) {
-        index.drawJoker(gc, image, rotatedImage);
-    }
-
-    public void drawJokerFace(GraphicsContext gc, Image image) {
-        face.drawJoker(gc, image);
-    }
-
-
-
-    private void loadPipImages(int suit) {
-        images = new Image[6];
+    private Image[] loadPipImages(int suit) {
+        Image[] images = new Image[6];
 
         images[0] = Utils.loadImage(getStandardPipImagePath(suit));
-        images[1] = Utils.rotateImage(images[0]);
+        images[1] = Utils.loadRotatedImage(getStandardPipImagePath(suit));
         images[2] = Utils.loadImage(getCornerPipImagePath(suit));
-        images[3] = Utils.rotateImage(images[2]);
+        images[3] = Utils.loadRotatedImage(getCornerPipImagePath(suit));
         images[4] = Utils.loadImage(getFacePipImagePath(suit));
-        images[5] = Utils.rotateImage(images[4]);
+        images[5] = Utils.loadRotatedImage(getFacePipImagePath(suit));
+
+        return images;
     }
 
     public void startGenerate() {
@@ -777,43 +764,95 @@ public class Model {
         makeOutputDirectory();
         setGenerating(true);
 
-        currentIndex = 0;
+        // Load the pip images for every suit up front, so that the cards can 
+        // be drawn in any order.
+        Image[][] images = new Image[suits.length][];
+        for (int s = 0; s < suits.length; ++s)
+            images[s] = loadPipImages(s);
+
+        GenerationSpec.Layout[] layouts = new GenerationSpec.Layout[cardItems.length];
+        layouts[INDEX_ID] = index.getLayout();
+        layouts[CORNER_PIP_ID] = cornerPip.getLayout();
+        layouts[STANDARD_PIP_ID] = standardPip.getLayout();
+        layouts[FACE_PIP_ID] = facePip.getLayout();
+        layouts[FACE_ID] = face.getLayout();
+
+        // Capture the settings so that the workers do not read them while 
+        // the user may be changing them.
+        spec = new GenerationSpec(this, layouts, images, 
+            index, cornerPip, standardPip, facePip, face);
     }
 
     /**
-     * Get the next card index.
-     * @return true if there is a next card, false if finished.
+     * @return the settings captured by startGenerate(), or null if not 
+     * generating.
      */
-    public boolean nextCardIndex() {
-        ++currentIndex;
-        if (IsFinished()) {
-            return false;
-        }
-
-        // Load the pip images ready for the standard cards.
-        if (currentIsAce()) {
-            final int suit = currentSuit();
-            loadPipImages(suit);
-        }
-
-        return true;
-    }
+    public GenerationSpec getGenerationSpec() { return spec; }
 
     public void finishGenerate() {
         setGenerating(false);
+        spec = null;
+        Debug.info(DD, ImageCache.getInstance().getStatistics());
     }
 
-    private int currentId() { return currentIndex; }
-    private boolean IsFinished() { return currentId() >= Default.DECK_COUNT.getInt(); }
+    /**
+     * Support for generating the cards in any order, where each card is 
+     * identified by its position in the deck.
+     */
+    public int getSuit(int id) { return id / Default.CARD_COUNT.getInt(); }
+    public int getCard(int id) { return id % Default.CARD_COUNT.getInt(); }
+    public boolean isJoker(int id) { return getCard(id) == 0; }
 
-    public Image[] currentImages() { return images; }
-    public int currentSuit() { return currentId() / Default.CARD_COUNT.getInt(); }
-    public int currentCard() { return currentId() % Default.CARD_COUNT.getInt(); }
-    public boolean currentIsJoker() { return currentCard() == 0; }
-    private boolean currentIsAce() { return currentCard() == 1; }
+    public String getOutputImagePath(int id) { 
+        return getOutputImagePath(getSuit(id), getCard(id));
+    }
 
-    public String currentOutputImagePath() { 
-        return getOutputImagePath(currentSuit(), currentCard());
+    /**
+     * Get the file paths of all the source images that the indicated card 
+     * may be drawn from, whether or not the files exist.
+     * 
+     * @param id position in the deck of the card.
+     * @return the list of file paths.
+     */
+    public List<String> getSourcePaths(int id) {
+        final int s = getSuit(id);
+        final int c = getCard(id);
+        List<String> paths = new ArrayList<String>();
+
+        paths.add(getFaceDirectory() + File.separator + "Watermark.png");
+        paths.add(getStandardPipImagePath(s));
+        paths.add(getCornerPipImagePath(s));
+        paths.add(getFacePipImagePath(s));
+
+        if (isJoker(id)) {
+            // Default jokers depend on the joker images of the earlier suits.
+            for (int i = 0; i <= s; ++i)
+                paths.add(getFaceImagePath(i, 0));
+            paths.add(getBaseDirectory() + File.separator + "boneyard" + File.separator + "Back.png");
+            paths.add(getJokerIndexImagePath(s));
+        } else {
+            paths.add(getFaceImagePath(s, c));
+            paths.add(getIndexImagePath(s, c));
+        }
+
+        return paths;
+    }
+
+    /**
+     * Count the Jokers of the suits before the given suit that have no image 
+     * file. Used to vary default joker generation independently of the order 
+     * the cards are generated in.
+     * 
+     * @param s suit of the joker to generate.
+     * @return number of preceding jokers with no image file.
+     */
+    public int getJokerDefaults(int s) {
+        int defaults = 0;
+        for (int i = 0; i < s; ++i)
+            if (!isFaceImageExists(i, 0))
+                defaults++;
+
+        return defaults;
     }
 
 
@@ -831,6 +870,7 @@ public class Model {
 
     private boolean manual = false;
     private String outputName = "";
+    private String outputDirectory = null;
 
     public boolean isManual() { return manual; }
     public String getManualOutputName() { return outputName; }
@@ -851,11 +891,29 @@ public class Model {
     }
 
     public String getOutputDirectory() {
-        return baseDirectory + "\\cards\\" + getOutputName();
+        if (outputDirectory != null)
+            return outputDirectory;
+
+        return baseDirectory + File.separator + "cards" + File.separator + getOutputName();
+    }
+
+    /**
+     * Send the output to the given directory instead of the "cards" 
+     * directory of the base directory.
+     * 
+     * @param directory path of the output directory, or null to use the 
+     * default.
+     */
+    public void setOutputDirectory(String directory) {
+        outputDirectory = directory;
+    }
+
+    public String getZipFile() {
+        return getOutputDirectory() + File.separator + getOutputName() + ".zip";
     }
 
     public String getSettingsFile() {
-        return getOutputDirectory() + "\\" + DATAFILE;
+        return getOutputDirectory() + File.separator + DATAFILE;
     }
 
     public boolean isSettingsFileExist() {
@@ -865,7 +923,7 @@ public class Model {
     }
 
     public String getOutputImagePath(int s, int c) {
-        return getOutputDirectory() + "\\" + suits[s] + cards[c] + ".png";
+        return getOutputDirectory() + File.separator + suits[s] + cards[c] + "." + getEncoder().getExtension();
     }
 
     public boolean makeOutputDirectory() {
@@ -873,11 +931,11 @@ public class Model {
         if (dir.exists())
             return true;
 
-        return dir.mkdir();
+        return dir.mkdirs();
     }
 
     private boolean makeCardsDirectory() {
-        File dir = new File(baseDirectory + "\\cards");
+        File dir = new File(baseDirectory + File.separator + "cards");
         if (dir.exists())
             return true;
 
@@ -1010,7 +1068,8 @@ public class Model {
         cardSize = size;
 
         syncCardItemsWithCardSize();
-        sample.syncCardSize();
+        if (sample != null)
+            sample.syncCardSize();
     }
 
     public void setPokerCardSize() { setCardSize(CardSize.POKER); }
@@ -1018,6 +1077,30 @@ public class Model {
     public void setFreeCardSize() { setCardSize(CardSize.FREE); }
     public void setMpcCardSize() { setCardSize(CardSize.MPC); }
 
+    // Names of the card sizes, in the order of CardSize, as used for the 
+    // sub-directories when a deck is generated at several sizes.
+    public static final String POKER_SIZE = "poker";
+    public static final String BRIDGE_SIZE = "bridge";
+    public static final String FREE_SIZE = "free";
+    public static final String MPC_SIZE = "mpc";
+    public static final List<String> CARD_SIZES = Arrays.asList(POKER_SIZE, BRIDGE_SIZE, FREE_SIZE, MPC_SIZE);
+
+    /**
+     * @return the name of the current card size, from CARD_SIZES.
+     */
+    public String getCardSizeName() { return CARD_SIZES.get(cardSize.ordinal()); }
+
+    /**
+     * Set the card size by name.
+     * 
+     * @param name of the card size, from CARD_SIZES.
+     */
+    public void setCardSize(String name) {
+        final int index = CARD_SIZES.indexOf(name);
+        if (index >= 0)
+            setCardSize(CardSize.values()[index]);
+    }
+
     /**
      * @return the user set card width in pixels.
      */
@@ -1050,7 +1133,8 @@ public class Model {
         cardWidthPX = width;
 
         syncCardItemsWithCardSize();
-        sample.syncCardSize();
+        if (sample != null)
+            sample.syncCardSize();
     }
 
     /**
@@ -1073,7 +1157,8 @@ public class Model {
         cardHeightPX = height;
 
         syncCardItemsWithCardSize();
-        sample.syncCardSize();
+        if (sample != null)
+            sample.syncCardSize();
     }
 
     public double getMpcBorderWidth() {
@@ -1465,7 +1550,7 @@ public class Model {
      * current style.
      */
     public String getFaceImagePath(int s, int c) {
-        return getFaceDirectory() + "\\" + suits[s] + cards[c] + ".png";
+        return getFaceDirectory() + File.separator + suits[s] + cards[c] + ".png";
     }
 
     /**
@@ -1477,16 +1562,16 @@ public class Model {
      * current style.
      */
     public String getIndexImagePath(int s, int c) {
-        String pathToImage = getIndexDirectory() + "\\" + suits[s] + cards[c] + ".png";
+        String pathToImage = getIndexDirectory() + File.separator + suits[s] + cards[c] + ".png";
         File file = new File(pathToImage);
         if (!file.exists())
-            pathToImage = getIndexDirectory() + "\\" + alts[s] + cards[c] + ".png";
+            pathToImage = getIndexDirectory() + File.separator + alts[s] + cards[c] + ".png";
 
         return pathToImage;
     }
 
     public String getJokerIndexImagePath(int s) {
-        return getIndexDirectory() + "\\" + suits[s] + cards[0] + ".png";
+        return getIndexDirectory() + File.separator + suits[s] + cards[0] + ".png";
     }
 
     /**
@@ -1497,7 +1582,7 @@ public class Model {
      * in the current style.
      */
     public String getStandardPipImagePath(int s) {
-        return getPipDirectory() + "\\" + suits[s] + ".png";
+        return getPipDirectory() + File.separator + suits[s] + ".png";
     }
 
     /**
@@ -1508,7 +1593,7 @@ public class Model {
      * the current style.
      */
     public String getFacePipImagePath(int s) {
-        String pathToImage = getPipDirectory() + "\\" + suits[s] + "F.png";
+        String pathToImage = getPipDirectory() + File.separator + suits[s] + "F.png";
         File file = new File(pathToImage);
         if (file.exists())
             return pathToImage;
@@ -1524,7 +1609,7 @@ public class Model {
      * the current style.
      */
     public String getCornerPipImagePath(int s) {
-        String pathToImage = getPipDirectory() + "\\" + suits[s] + "S.png";
+        String pathToImage = getPipDirectory() + File.separator + suits[s] + "S.png";
         File file = new File(pathToImage);
         if (file.exists())
             return pathToImage;
@@ -1956,6 +2041,7 @@ public class Model {
         initializeModifyCardItem();
         initializeCardItemPriority();
         initializeJokers();
+        initializeGeneration();
     }
 
 
@@ -2223,4 +2309,180 @@ public class Model {
     }
 
 
+
+    /************************************************************************
+     * Support code for "Generation" panel. 
+     */
+
+    private final int CORES = Runtime.getRuntime().availableProcessors();
+
+    private GenerationExecutor executor;
+
+    private SpinnerValueFactory<Integer> renderThreadsSVF;
+    private SpinnerValueFactory<Integer> writeThreadsSVF;
+
+    /**
+     * @return the long-lived executor used to generate the cards.
+     */
+    public GenerationExecutor getExecutor() { return executor; }
+
+    /**
+     * @return the number of threads used to draw the cards.
+     */
+    public int getRenderThreads() { return executor.getRenderThreads(); }
+    public void setRenderThreads(int value) { executor.setRenderThreads(value); }
+
+    /**
+     * @return the number of threads used to encode and save the cards.
+     */
+    public int getWriteThreads() { return executor.getWriteThreads(); }
+    public void setWriteThreads(int value) { executor.setWriteThreads(value); }
+
+    public SpinnerValueFactory<Integer> getRenderThreadsSVF() { return renderThreadsSVF; }
+    public SpinnerValueFactory<Integer> getWriteThreadsSVF() { return writeThreadsSVF; }
+
+    public void resetRenderThreadsSVF() { renderThreadsSVF.setValue(CORES); }
+    public void resetWriteThreadsSVF() { writeThreadsSVF.setValue(CORES); }
+
+    private boolean headlessRendering = true;
+    private final List<String> generationSizes = new ArrayList<String>();
+    private boolean incremental = false;
+
+    /**
+     * @return true if only the cards whose settings or source images have 
+     * changed since they were last generated should be generated.
+     */
+    public boolean isIncremental() { return incremental; }
+    public void setIncremental(boolean state) { incremental = state; }
+
+    private boolean skipIdenticalWrites = false;
+
+    /**
+     * @return true if a card should not be saved when its pixels are 
+     * identical to the card already on disc.
+     */
+    public boolean isSkipIdenticalWrites() { return skipIdenticalWrites; }
+    public void setSkipIdenticalWrites(boolean state) { skipIdenticalWrites = state; }
+
+    public static final String PNG_FORMAT = "PNG";
+    public static final String PAM_FORMAT = "PAM (Uncompressed)";
+
+    ObservableList<String> formatList = FXCollections.observableArrayList(PNG_FORMAT, PAM_FORMAT);
+    ObservableList<String> filterList = FXCollections.observableArrayList();
+
+    private static final int DEFAULT_COMPRESSION = 6;
+    private static final int DEFAULT_PADDING = 2;
+
+    private String format = PNG_FORMAT;
+    private PngEncoder.Filter filter = PngEncoder.Filter.ADAPTIVE;
+    private SpinnerValueFactory<Integer> compressionSVF;
+
+    public ObservableList<String> getFormatList() { return formatList; }
+    public ObservableList<String> getFilterList() { return filterList; }
+
+    public String getFormat() { return format; }
+    public void setFormat(String value) { format = value; }
+
+    public String getFilter() { return filter.getLabel(); }
+    public void setFilter(String value) { filter = PngEncoder.Filter.fromLabel(value); }
+
+    public int getCompressionLevel() { return compressionSVF.getValue(); }
+    public void setCompressionLevel(int value) { compressionSVF.setValue(value); }
+    public SpinnerValueFactory<Integer> getCompressionSVF() { return compressionSVF; }
+    public void resetCompressionSVF() { compressionSVF.setValue(DEFAULT_COMPRESSION); }
+
+    public static final String FILES_OUTPUT = "Separate Files";
+    public static final String ATLAS_OUTPUT = "Atlas";
+    public static final String ZIP_OUTPUT = "ZIP Archive";
+
+    ObservableList<String> outputModeList = FXCollections.observableArrayList(FILES_OUTPUT, ATLAS_OUTPUT, ZIP_OUTPUT);
+    ObservableList<String> packingList = FXCollections.observableArrayList(
+        AtlasOutput.GRID_PACKING, AtlasOutput.POWER_OF_TWO_PACKING);
+    ObservableList<String> sidecarList = FXCollections.observableArrayList(
+        AtlasOutput.JSON_SIDECAR, AtlasOutput.CSV_SIDECAR);
+
+    private String outputMode = FILES_OUTPUT;
+    private String atlasPacking = AtlasOutput.GRID_PACKING;
+    private String atlasSidecar = AtlasOutput.JSON_SIDECAR;
+    private SpinnerValueFactory<Integer> paddingSVF;
+
+    public ObservableList<String> getOutputModeList() { return outputModeList; }
+    public ObservableList<String> getPackingList() { return packingList; }
+    public ObservableList<String> getSidecarList() { return sidecarList; }
+
+    /**
+     * @return how the cards are saved, either as separate files, combined 
+     * into a single atlas or as entries in a ZIP archive.
+     */
+    public String getOutputMode() { return outputMode; }
+    public void setOutputMode(String value) { outputMode = value; }
+
+    public String getAtlasPacking() { return atlasPacking; }
+    public void setAtlasPacking(String value) { atlasPacking = value; }
+
+    public String getAtlasSidecar() { return atlasSidecar; }
+    public void setAtlasSidecar(String value) { atlasSidecar = value; }
+
+    public int getAtlasPadding() { return paddingSVF.getValue(); }
+    public void setAtlasPadding(int value) { paddingSVF.setValue(value); }
+    public SpinnerValueFactory<Integer> getPaddingSVF() { return paddingSVF; }
+    public void resetPaddingSVF() { paddingSVF.setValue(DEFAULT_PADDING); }
+
+    /**
+     * @return a new Encoder for the selected output format and settings.
+     */
+    public Encoder getEncoder() {
+        if (format.equals(PAM_FORMAT))
+            return new PamEncoder();
+
+        return new PngEncoder(getCompressionLevel(), filter);
+    }
+
+    /**
+     * @return the names of the card sizes to generate the deck at, in the 
+     * order of CARD_SIZES, each in its own sub-directory. If empty, the deck 
+     * is only generated at the current size.
+     */
+    public List<String> getGenerationSizes() { return new ArrayList<String>(generationSizes); }
+
+    public boolean isGenerationSize(String name) { return generationSizes.contains(name); }
+
+    /**
+     * Select whether the deck is generated at the named card size.
+     * 
+     * @param name of the card size, from CARD_SIZES.
+     * @param state true to generate the deck at the card size.
+     */
+    public void setGenerationSize(String name, boolean state) {
+        generationSizes.remove(name);
+        if (state && CARD_SIZES.contains(name))
+            generationSizes.add(name);
+
+        generationSizes.sort((a, b) -> CARD_SIZES.indexOf(a) - CARD_SIZES.indexOf(b));
+    }
+
+    /**
+     * @return true if the cards should be drawn straight into a BufferedImage 
+     * using Java2D, false if they should be drawn on a JavaFX Canvas.
+     */
+    public boolean isHeadlessRendering() { return headlessRendering; }
+    public void setHeadlessRendering(boolean state) { headlessRendering = state; }
+
+    /**
+     * Initialize "Generation" panel.
+     */
+    private void initializeGeneration() {
+        executor = new GenerationExecutor(CORES, CORES);
+
+        renderThreadsSVF = new SpinnerValueFactory.IntegerSpinnerValueFactory(1, CORES * 2, CORES);
+        writeThreadsSVF = new SpinnerValueFactory.IntegerSpinnerValueFactory(1, CORES * 2, CORES);
+
+        for (PngEncoder.Filter value : PngEncoder.Filter.values())
+            filterList.add(value.getLabel());
+        compressionSVF = new SpinnerValueFactory.IntegerSpinnerValueFactory(
+            Deflater.NO_COMPRESSION, Deflater.BEST_COMPRESSION, DEFAULT_COMPRESSION);
+        paddingSVF = new SpinnerValueFactory.IntegerSpinnerValueFactory(0, 64, DEFAULT_PADDING);
+    }
+
+
 }
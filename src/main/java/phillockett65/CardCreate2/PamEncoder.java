@@ -0,0 +1,61 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PamEncoder encodes images as uncompressed Netpbm PAM files with an RGBA 
+ * tuple type. It does no compression at all, which makes it the fastest 
+ * format for images that are only passed on to other tools.
+ */
+package phillockett65.CardCreate2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+
+public class PamEncoder implements Encoder {
+
+    @Override
+    public String getExtension() { return "pam"; }
+
+    @Override
+    public String getDescription() { return "PAM"; }
+
+    @Override
+    public void encode(RowSource image, OutputStream out) throws IOException {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+
+        final String header = "P7\nWIDTH " + width + "\nHEIGHT " + height + 
+            "\nDEPTH 4\nMAXVAL 255\nTUPLTYPE RGB_ALPHA\nENDHDR\n";
+        out.write(header.getBytes(StandardCharsets.US_ASCII));
+
+        int[] pixels = new int[width];
+        byte[] row = new byte[width * 4];
+        for (int y = 0; y < height; ++y) {
+            image.getRow(y, pixels);
+            PngEncoder.toRGBA(pixels, 0, width, row);
+            out.write(row);
+        }
+
+        out.flush();
+    }
+
+}
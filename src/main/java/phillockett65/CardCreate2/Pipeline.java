@@ -0,0 +1,691 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Pipeline is responsible for generating a deck of cards using two stages 
+ * connected by a bounded queue. The render stage draws each card and the 
+ * encode stage masks, encodes and saves it, so that the next card is drawn 
+ * while the previous one is being saved. The bounded queue caps the number 
+ * of drawn cards waiting to be saved, which keeps memory use in check.
+ */
+package phillockett65.CardCreate2;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import phillockett65.CardCreate2.sample.Default;
+import phillockett65.Debug.Debug;
+
+
+public class Pipeline {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    /**
+     * Interface used to report progress. All calls are made on the 
+     * Application thread.
+     */
+    public interface Listener {
+
+        /**
+         * Called each time a stage has finished with a card.
+         */
+        public void stepCompleted();
+
+        /**
+         * Called when every card has passed through both stages.
+         */
+        public void pipelineFinished();
+    }
+
+    /**
+     * A drawn card waiting in the hand-off queue to be saved, along with the 
+     * pooled image it was drawn on.
+     */
+    private static class Card {
+        private final int id;
+        private final Write task;
+        private final BufferedImage image;
+        private final WritableImage snapshot;
+        private final long queued = GenerationStats.start();
+
+        public Card(int id, Write task, BufferedImage image, WritableImage snapshot) {
+            this.id = id;
+            this.task = task;
+            this.image = image;
+            this.snapshot = snapshot;
+        }
+
+        public Card(int id, Write task) {
+            this(id, task, null, null);
+        }
+    }
+
+    // Marker used to tell the encode stage that there are no more cards.
+    private static final Card END = new Card(-1, null);
+
+    private final Model model;
+    private final GenerationSpec spec;
+    private final Listener listener;
+    private final GenerationExecutor executor;
+
+    private final int renderThreads;
+    private final int encodeThreads;
+    private final int capacity;
+
+    private final Queue<Integer> renderQueue = new ConcurrentLinkedQueue<Integer>();
+    private final BlockingQueue<Card> encodeQueue;
+
+    private final AtomicInteger rendering = new AtomicInteger();
+    private final AtomicInteger encoding = new AtomicInteger();
+    private final AtomicInteger renderersLeft;
+    private final AtomicInteger encodersLeft;
+
+    private int width;
+    private int height;
+    private final SnapshotParameters parameters;
+    private final CardMask mask;
+    private final ImagePool pool;
+    private final IconCache icons;
+    private final GenerationStats stats = new GenerationStats();
+    private final Encoder encoder;
+    private final CardOutput output;
+    private final boolean separateFiles;
+    private final boolean skipIdenticalWrites;
+    private final boolean incremental;
+    private final boolean useManifest;
+
+    private final Manifest manifest;
+    private final Manifest.Entry[] inputs;
+    private int unchanged = 0;
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger identical = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private volatile boolean cancelled = false;
+    private final Set<Task<Long>> active = ConcurrentHashMap.newKeySet();
+
+
+    /**
+     * Pipeline constructor. Must be run from the Application thread, after 
+     * Model.startGenerate(), as the current settings are read here.
+     * 
+     * @param listener to report progress to.
+     * @param executor used to run both stages.
+     * @param capacity maximum number of drawn cards waiting to be saved.
+     * @throws IOException if the output could not be created.
+     */
+    public Pipeline(Listener listener, GenerationExecutor executor, int capacity) throws IOException {
+        this(listener, executor, capacity, new IconCache());
+    }
+
+    /**
+     * Pipeline constructor sharing the scaled icons with other Pipelines, 
+     * such as those generating the same deck at other card sizes. Must be 
+     * run from the Application thread, after Model.startGenerate(), as the 
+     * current settings are read here.
+     * 
+     * @param listener to report progress to.
+     * @param executor used to run both stages.
+     * @param capacity maximum number of drawn cards waiting to be saved.
+     * @param icons cache of scaled icons, which may be used by several 
+     * Pipelines at once.
+     * @throws IOException if the output could not be created.
+     */
+    public Pipeline(Listener listener, GenerationExecutor executor, int capacity, 
+        IconCache icons) throws IOException {
+        model = Model.getInstance();
+        this.icons = icons;
+        spec = model.getGenerationSpec();
+        this.listener = listener;
+        this.executor = executor;
+        renderThreads = executor.getRenderThreads();
+        encodeThreads = executor.getWriteThreads();
+        this.capacity = capacity;
+
+        encodeQueue = new ArrayBlockingQueue<Card>(capacity);
+        renderersLeft = new AtomicInteger(renderThreads);
+        encodersLeft = new AtomicInteger(encodeThreads);
+
+        parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+
+        finaliseSize();
+        mask = getMask();
+        pool = new ImagePool(width, height);
+        encoder = model.getEncoder();
+        separateFiles = model.getOutputMode().equals(Model.FILES_OUTPUT);
+        skipIdenticalWrites = model.isSkipIdenticalWrites();
+        incremental = model.isIncremental();
+        useManifest = separateFiles && (incremental || skipIdenticalWrites);
+        output = getOutput();
+
+        // The manifest is only kept when one of the options that reads it is 
+        // selected, so that otherwise only the cards are saved.
+        manifest = new Manifest(spec.getOutputDirectory());
+        inputs = useManifest ? getInputs() : null;
+    }
+
+    private void finaliseSize() {
+        width = spec.getImageWidth();
+        height = spec.getImageHeight();
+    }
+
+    private CardMask getMask() {
+        CardMask mask = null;
+
+        if (spec.isCropCorners()) {
+            final int width = (int)spec.getWidth();
+            final int height = (int)spec.getHeight();
+            final double arcWidth = spec.getArcWidthPX();
+            final double arcHeight = spec.getArcHeightPX();
+            
+            mask = CardMask.getMask(width, height, arcWidth, arcHeight);
+        }
+
+        return mask;
+    }
+
+
+    /**
+     * Create the CardOutput for the selected output mode.
+     * 
+     * @return the CardOutput.
+     * @throws IOException if the atlas could not be created.
+     */
+    private CardOutput getOutput() throws IOException {
+        final int count = Default.DECK_COUNT.getInt();
+        String[] paths = new String[count];
+        for (int id = 0; id < count; ++id)
+            paths[id] = spec.getOutputImagePath(id);
+
+        if (separateFiles)
+            return new FileOutput(paths);
+
+        String[] names = new String[count];
+        for (int id = 0; id < count; ++id)
+            names[id] = new File(paths[id]).getName();
+
+        if (model.getOutputMode().equals(Model.ZIP_OUTPUT)) {
+            try {
+                return new ZipOutput(model.getZipFile(), names);
+            } catch (IOException e) {
+                Debug.critical(DD, "getOutput() - Failed creating archive, saving separate files: " + e);
+
+                return new FileOutput(paths);
+            }
+        }
+
+        return new AtlasOutput(spec.getOutputDirectory(), names, width, height, 
+            model.getAtlasPadding(), model.getAtlasPacking(), model.getAtlasSidecar(), encoder);
+    }
+
+    /**
+     * Capture the hash of the settings used by each card and its source 
+     * files.
+     * 
+     * @return the inputs of each card, indexed by position in the deck.
+     */
+    private Manifest.Entry[] getInputs() {
+        Manifest.Entry[] inputs = new Manifest.Entry[Default.DECK_COUNT.getInt()];
+
+        for (int id = 0; id < inputs.length; ++id) {
+            List<Manifest.Source> sources = new ArrayList<Manifest.Source>();
+            for (String path : model.getSourcePaths(id))
+                sources.add(Manifest.Source.of(path));
+
+            inputs[id] = new Manifest.Entry(spec.getSettingsHash(id), sources);
+        }
+
+        return inputs;
+    }
+
+    /**
+     * Check if the indicated card can be left as it is.
+     * 
+     * @param id position in the deck of the card.
+     * @return true if the card was generated from the current inputs and is 
+     * still on disc as it was saved, false otherwise.
+     */
+    private boolean isUnchanged(int id) {
+        if (!manifest.isCurrent(id, inputs[id]))
+            return false;
+
+        return manifest.isOutputCurrent(id, spec.getOutputImagePath(id));
+    }
+
+    /**
+     * @return the number of cards that were not drawn as their inputs were 
+     * unchanged.
+     */
+    public int getUnchangedCount() { return unchanged; }
+
+    /**
+     * @return the number of cards that were drawn but not saved as their 
+     * pixels were identical to the saved card.
+     */
+    public int getIdenticalCount() { return identical.get(); }
+
+    /**
+     * @return the number of cards saved to disc.
+     */
+    public int getWrittenCount() { return written.get(); }
+
+    /**
+     * @return the number of cards that could not be drawn or saved.
+     */
+    public int getFailedCount() { return failed.get(); }
+
+    /**
+     * @return the directory the deck is saved in.
+     */
+    public String getOutputDirectory() { return spec.getOutputDirectory(); }
+
+    /**
+     * @return the timings of this generation.
+     */
+    public GenerationStats getStats() { return stats; }
+
+    /**
+     * @return true if cancel() has been called, false otherwise.
+     */
+    public boolean isCancelled() { return cancelled; }
+
+
+    /************************************************************************
+     * Support code for the queue depths of each stage.
+     */
+
+    /**
+     * @return the number of cards waiting to be drawn.
+     */
+    public int getRenderQueueDepth() { return renderQueue.size(); }
+
+    /**
+     * @return the number of cards currently being drawn.
+     */
+    public int getRenderActive() { return rendering.get(); }
+
+    /**
+     * @return the number of drawn cards waiting to be saved.
+     */
+    public int getEncodeQueueDepth() { return encodeQueue.size(); }
+
+    /**
+     * @return the maximum number of drawn cards that can wait to be saved.
+     */
+    public int getEncodeQueueCapacity() { return capacity; }
+
+    /**
+     * @return the number of cards currently being saved.
+     */
+    public int getEncodeActive() { return encoding.get(); }
+
+
+
+    /************************************************************************
+     * Support code for the stages.
+     */
+
+    /**
+     * Start the workers for both stages on the executor. When generating 
+     * incrementally, cards that are unchanged since they were last generated 
+     * are not queued, but are still reported as completed steps. Cards are 
+     * only skipped when they are saved as separate files.
+     */
+    public void start() {
+        stats.begin();
+        if (useManifest)
+            manifest.read();
+
+        for (int id = 0; id < Default.DECK_COUNT.getInt(); ++id) {
+            if (useManifest && incremental && isUnchanged(id)) {
+                unchanged++;
+                listener.stepCompleted();
+                listener.stepCompleted();
+            } else {
+                manifest.remove(id);
+                renderQueue.add(id);
+            }
+        }
+
+        for (int i = 0; i < renderThreads; ++i)
+            executor.executeRender(() -> render());
+
+        for (int i = 0; i < encodeThreads; ++i)
+            executor.executeWrite(() -> encode());
+    }
+
+    /**
+     * Cancel the generation. No more cards are drawn, the cards currently 
+     * being drawn or saved are interrupted, cards waiting to be saved are 
+     * discarded and any partially written output is deleted. The cards 
+     * already saved are kept. The Listener is still told when the pipeline 
+     * has finished, which is within the time taken for one card.
+     */
+    public void cancel() {
+        if (cancelled)
+            return;
+
+        Debug.info(DD, "cancel()");
+        cancelled = true;
+        renderQueue.clear();
+
+        for (Task<Long> task : active)
+            task.cancel(true);
+    }
+
+    /**
+     * Run a task on the current thread, unless the generation has been 
+     * cancelled, in which case it is not run at all. While it is running 
+     * the task can be cancelled by cancel().
+     * 
+     * @param task to run.
+     */
+    private void runTask(Task<Long> task) {
+        // Add the task before checking, so that either cancel() finds it 
+        // or it is not run.
+        active.add(task);
+        try {
+            if (cancelled)
+                task.cancel(false);
+            else
+                task.run();
+        } finally {
+            active.remove(task);
+        }
+
+        // Clear any interrupt left by cancel() as the thread is reused.
+        if (task.isCancelled())
+            Thread.interrupted();
+    }
+
+    /**
+     * Take a snapshot of the given canvas on the Application thread and wait 
+     * for it to complete.
+     * 
+     * @param canvas to take the snapshot of.
+     * @return the snapshot image, taken from the pool, or null if the 
+     * snapshot failed.
+     */
+    private WritableImage takeSnapshot(Canvas canvas) throws InterruptedException {
+        final long start = GenerationStats.start();
+        FutureTask<WritableImage> snapshot = new FutureTask<WritableImage>(() -> {
+            WritableImage image = pool.takeSnapshot();
+            canvas.snapshot(parameters, image);
+
+            return image;
+        });
+
+        Platform.runLater(snapshot);
+
+        try {
+            return snapshot.get();
+        } catch (ExecutionException e) {
+            Debug.critical(DD, "takeSnapshot() - Failed to take snapshot: " + e.getCause());
+        } finally {
+            GenerationStats.record(GenerationStats.Stage.SNAPSHOT, start);
+        }
+
+        return null;
+    }
+
+    /**
+     * Draw the indicated card and create the Write task to save it.
+     * 
+     * @param id position in the deck of the card to draw.
+     * @return the Card holding the Write task, or null if the card could not 
+     * be drawn.
+     */
+    private Card renderCard(int id) throws InterruptedException {
+        final int defaults = spec.getJokerDefaults(spec.getSuit(id));
+
+        Generate generate = new Generate(spec, id, 0L, defaults);
+        generate.setImagePool(pool);
+        generate.setIconCache(icons);
+        final long start = GenerationStats.start();
+        runTask(generate);
+        GenerationStats.record(GenerationStats.Stage.RENDER, start);
+
+        try {
+            generate.get();
+        } catch (CancellationException e) {
+            // The card may have been finished just before it was cancelled.
+            pool.release(generate.getImage());
+
+            return null;
+        } catch (ExecutionException e) {
+            Debug.critical(DD, "renderCard() - Failed generating card " + id + ": " + e.getCause());
+            pool.release(generate.getImage());
+
+            return null;
+        }
+
+        final String outputPath = spec.getOutputImagePath(id);
+        final Card card;
+        if (generate.getImage() != null) {
+            final BufferedImage image = generate.getImage();
+            card = new Card(id, new Write(0L, mask, encoder, image, output, id), image, null);
+        } else {
+            final WritableImage image = takeSnapshot(generate.getCanvas());
+            if (image == null)
+                return null;
+
+            card = new Card(id, new Write(0L, mask, encoder, image, output, id), null, image);
+        }
+
+        if (useManifest && skipIdenticalWrites)
+            card.task.setContentCheck(manifest.getContentHash(id, outputPath));
+
+        return card;
+    }
+
+    /**
+     * Return the image a card was drawn on to the pool, once it has been 
+     * saved or discarded.
+     * 
+     * @param card that is finished with.
+     */
+    private void release(Card card) {
+        pool.release(card.image);
+        pool.release(card.snapshot);
+    }
+
+    /**
+     * Put a card on the hand-off queue, waiting for space even if 
+     * interrupted, as the encoders only stop once they have taken END.
+     * 
+     * @param card to hand to the encode stage.
+     */
+    private void putUninterruptibly(Card card) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    encodeQueue.put(card);
+
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Render stage: draw cards until there are none left, passing each one 
+     * to the encode stage. Blocks when the hand-off queue is full.
+     */
+    private void render() {
+        GenerationStats.setCurrent(stats);
+        try {
+            Integer id;
+            while ((!cancelled) && ((id = renderQueue.poll()) != null)) {
+                rendering.incrementAndGet();
+                try {
+                    final Card card = renderCard(id);
+                    if (card != null)
+                        encodeQueue.put(card);
+                    else if (!cancelled)
+                        failed.incrementAndGet();
+                } catch (RuntimeException e) {
+                    failed.incrementAndGet();
+                    Debug.critical(DD, "render() - Failed rendering card " + id + ": " + e);
+                } finally {
+                    rendering.decrementAndGet();
+                }
+
+                Platform.runLater(() -> listener.stepCompleted());
+            }
+        } catch (InterruptedException e) {
+            // Not expected, but the encoders must still be told to stop.
+            Debug.major(DD, "render() - Interrupted: " + e);
+        } finally {
+            GenerationStats.setCurrent(null);
+
+            // The last renderer to finish tells the encoders to stop, 
+            // however it finished.
+            if (renderersLeft.decrementAndGet() == 0)
+                for (int i = 0; i < encodeThreads; ++i)
+                    putUninterruptibly(END);
+        }
+    }
+
+    /**
+     * Encode stage: save the drawn cards until told to stop.
+     */
+    private void encode() {
+        GenerationStats.setCurrent(stats);
+        try {
+            Card card;
+            while ((card = encodeQueue.take()) != END) {
+                // Discard the cards still waiting when cancelled.
+                if (cancelled) {
+                    release(card);
+                    continue;
+                }
+
+                GenerationStats.record(GenerationStats.Stage.QUEUE, card.queued);
+                encoding.incrementAndGet();
+                try {
+                    runTask(card.task);
+                    try {
+                        card.task.get();
+                    } catch (CancellationException e) {
+                        // The card may have been saved before the cancel 
+                        // reached it, otherwise the partial output has been 
+                        // deleted by the CardOutput.
+                    }
+
+                    if (card.task.isSaved()) {
+                        if (useManifest)
+                            manifest.update(card.id, inputs[card.id]);
+
+                        if (card.task.isSkipped()) {
+                            identical.incrementAndGet();
+                        } else {
+                            written.incrementAndGet();
+                            if (useManifest)
+                                manifest.setContentHash(card.id, card.task.getContentHash(), spec.getOutputImagePath(card.id));
+                        }
+                    } else if (!cancelled) {
+                        failed.incrementAndGet();
+                    }
+                } catch (ExecutionException e) {
+                    failed.incrementAndGet();
+                    Debug.critical(DD, "encode() - Failed saving card " + card.id + ": " + e.getCause());
+                } catch (RuntimeException e) {
+                    failed.incrementAndGet();
+                    Debug.critical(DD, "encode() - Failed saving card " + card.id + ": " + e);
+                } finally {
+                    release(card);
+                    encoding.decrementAndGet();
+                }
+
+                Platform.runLater(() -> listener.stepCompleted());
+            }
+        } catch (InterruptedException e) {
+            Debug.major(DD, "encode() - Interrupted: " + e);
+        } finally {
+            GenerationStats.setCurrent(null);
+
+            if (encodersLeft.decrementAndGet() == 0)
+                finish();
+        }
+    }
+
+    /**
+     * Close the output, save the manifest and report that the Pipeline has 
+     * finished. Run by the last encoder to stop.
+     */
+    private void finish() {
+        try {
+            if (cancelled) {
+                output.abort();
+            } else {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    Debug.critical(DD, "finish() - Failed closing output: " + e);
+                }
+            }
+
+            // Keep track of the cards that were saved, even if cancelled, so 
+            // that they are not generated again.
+            if (useManifest)
+                manifest.write();
+
+            stats.end(written.get() + identical.get());
+            if (!cancelled)
+                stats.writeReport(spec.getOutputDirectory());
+            Debug.info(DD, "finish() - " + stats.getSummary());
+            Debug.info(DD, "finish() - Created " + pool.getCreatedCount() + " card images");
+            Debug.info(DD, "finish() - " + icons.getStatistics());
+        } finally {
+            // Always report, so that the caller is never left waiting.
+            Platform.runLater(() -> listener.pipelineFinished());
+        }
+    }
+
+}
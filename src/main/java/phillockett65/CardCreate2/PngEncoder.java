@@ -0,0 +1,526 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PngEncoder encodes images as 8-bit RGBA PNG files, with a selectable 
+ * deflate compression level and row filter strategy. Low levels with no 
+ * filtering are fast for proofs, while the maximum level with adaptive 
+ * filtering gives the smallest files for release.
+ * 
+ * Large images are split into stripes of rows that are filtered and deflated
+ * in parallel. Each stripe is primed with the end of the previous stripe as 
+ * a dictionary and ends on a byte boundary, so the stripes are stitched into 
+ * a single zlib stream, one IDAT chunk per stripe. Smaller images are 
+ * streamed a row at a time straight through filtering and deflate into 
+ * IDAT chunks, so no copy of the image is made.
+ */
+package phillockett65.CardCreate2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+
+public class PngEncoder implements Encoder {
+
+    private static final byte[] SIGNATURE = { (byte)137, 80, 78, 71, 13, 10, 26, 10 };
+
+    /**
+     * The PNG row filters, plus ADAPTIVE which picks the best filter for 
+     * each row.
+     */
+    public enum Filter {
+        NONE("None"), SUB("Sub"), UP("Up"), AVERAGE("Average"), PAETH("Paeth"), ADAPTIVE("Adaptive");
+
+        private final String label;
+
+        private Filter(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() { return label; }
+
+        /**
+         * @param label of the filter.
+         * @return the filter with the given label, or ADAPTIVE if not found.
+         */
+        public static Filter fromLabel(String label) {
+            for (Filter filter : values())
+                if (filter.label.equals(label))
+                    return filter;
+
+            return ADAPTIVE;
+        }
+    }
+
+    // Images with more pixels than this are deflated in parallel stripes.
+    private static final int PARALLEL_THRESHOLD = 1024 * 1024;
+
+    // Target number of filtered bytes in each parallel stripe.
+    private static final int STRIPE_BYTES = 512 * 1024;
+
+    // Size of the deflate window, used as the dictionary for each stripe.
+    private static final int WINDOW = 32 * 1024;
+
+    private final int level;
+    private final Filter filter;
+
+
+    /**
+     * PngEncoder constructor.
+     * 
+     * @param level deflate compression level, from 0 (none) to 9 (maximum).
+     * @param filter row filter strategy.
+     */
+    public PngEncoder(int level, Filter filter) {
+        this.level = Math.max(Deflater.NO_COMPRESSION, Math.min(level, Deflater.BEST_COMPRESSION));
+        this.filter = filter;
+    }
+
+    public int getLevel() { return level; }
+    public Filter getFilter() { return filter; }
+
+    @Override
+    public String getExtension() { return "png"; }
+
+    @Override
+    public String getDescription() { return "PNG level " + level + " " + filter.getLabel(); }
+
+    @Override
+    public void encode(RowSource image, OutputStream out) throws IOException {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(SIGNATURE);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream ihdr = new DataOutputStream(header);
+        ihdr.writeInt(width);
+        ihdr.writeInt(height);
+        ihdr.writeByte(8);      // Bit depth.
+        ihdr.writeByte(6);      // Colour type: RGBA.
+        ihdr.writeByte(0);      // Compression method: deflate.
+        ihdr.writeByte(0);      // Filter method: adaptive.
+        ihdr.writeByte(0);      // Interlace method: none.
+        writeChunk(data, "IHDR", header.toByteArray(), header.size());
+
+        if ((long)width * height > PARALLEL_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1)
+            writeStripes(data, image);
+        else
+            writeStream(data, image);
+
+        writeChunk(data, "IEND", new byte[0], 0);
+        data.flush();
+    }
+
+
+    /************************************************************************
+     * Support code for deflating the image data.
+     */
+
+    /**
+     * Stream that writes its data as a sequence of IDAT chunks.
+     */
+    private static class ChunkOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte[] buffer = new byte[64 * 1024];
+        private int count = 0;
+
+        private ChunkOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length)
+                flush();
+
+            buffer[count++] = (byte)b;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == buffer.length)
+                    flush();
+
+                final int size = Math.min(length, buffer.length - count);
+                System.arraycopy(data, offset, buffer, count, size);
+                count += size;
+                offset += size;
+                length -= size;
+            }
+        }
+
+        /**
+         * Write any buffered data as an IDAT chunk.
+         */
+        @Override
+        public void flush() throws IOException {
+            if (count > 0)
+                writeChunk(out, "IDAT", buffer, count);
+
+            count = 0;
+        }
+
+        /**
+         * Flush the buffered data, but leave the underlying stream open.
+         */
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * Filter and deflate the whole image a row at a time as a single zlib 
+     * stream, written as IDAT chunks as the compressed data is produced.
+     * 
+     * @param out stream to write the chunks to.
+     * @param image to encode.
+     */
+    private void writeStream(DataOutputStream out, RowSource image) throws IOException {
+        Deflater deflater = new Deflater(level);
+
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(new ChunkOutputStream(out), deflater, 64 * 1024)) {
+            filterRows(image, 0, image.getHeight(), deflate);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Filter and deflate the image in parallel stripes, and write each 
+     * stripe as an IDAT chunk. The first chunk starts with the zlib header 
+     * and the last chunk ends with the Adler-32 checksum of all the stripes.
+     * 
+     * @param out stream to write the chunks to.
+     * @param image to encode.
+     */
+    private void writeStripes(DataOutputStream out, RowSource image) throws IOException {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int rowBytes = width * 4 + 1;
+        final int rows = Math.max(16, (STRIPE_BYTES + rowBytes - 1) / rowBytes);
+        final int count = (height + rows - 1) / rows;
+
+        List<Stripe> stripes;
+        try {
+            stripes = IntStream.range(0, count).parallel()
+                .mapToObj(i -> compressStripe(image, i * rows, Math.min((i + 1) * rows, height), rowBytes))
+                .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        long adler = 1;
+        for (int i = 0; i < count; ++i) {
+            final Stripe stripe = stripes.get(i);
+            adler = combineAdler(adler, stripe.adler, stripe.length);
+
+            ByteArrayOutputStream chunk = stripe.data;
+            if (i == 0) {
+                ByteArrayOutputStream first = new ByteArrayOutputStream(chunk.size() + 2);
+                first.write(0x78);
+                first.write(getHeaderFlags());
+                chunk.writeTo(first);
+                chunk = first;
+            }
+            if (i == count - 1) {
+                new DataOutputStream(chunk).writeInt((int)adler);
+            }
+
+            writeChunk(out, "IDAT", chunk.toByteArray(), chunk.size());
+        }
+    }
+
+    /**
+     * A deflated stripe of rows, with the Adler-32 checksum and length of 
+     * the filtered bytes it holds.
+     */
+    private static class Stripe {
+        private final ByteArrayOutputStream data;
+        private final long adler;
+        private final long length;
+
+        private Stripe(ByteArrayOutputStream data, long adler, long length) {
+            this.data = data;
+            this.adler = adler;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Filter and deflate a stripe of rows as raw deflate data. All but the 
+     * last stripe end with a sync flush so that the stripes can be joined.
+     * 
+     * @param image to encode.
+     * @param first row of the stripe.
+     * @param last row of the stripe (exclusive).
+     * @param rowBytes number of filtered bytes in each row.
+     * @return the deflated stripe.
+     */
+    private Stripe compressStripe(RowSource image, int first, int last, int rowBytes) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(level, true);
+
+        try {
+            // Prime the deflater with the end of the previous stripe, which 
+            // is filtered again here rather than waiting for that stripe.
+            if (first > 0) {
+                final int context = Math.min(first, (WINDOW + rowBytes - 1) / rowBytes);
+                ByteArrayOutputStream previous = new ByteArrayOutputStream(context * rowBytes);
+                filterRows(image, first - context, first, previous);
+
+                final byte[] dictionary = previous.toByteArray();
+                final int length = Math.min(dictionary.length, WINDOW);
+                deflater.setDictionary(dictionary, dictionary.length - length, length);
+            }
+
+            // The stream is not closed, as that would end the deflate data.
+            Adler32 adler = new Adler32();
+            DeflaterOutputStream deflate = new DeflaterOutputStream(compressed, deflater, 64 * 1024, true);
+            filterRows(image, first, last, new CheckedOutputStream(deflate, adler));
+
+            if (last < image.getHeight())
+                deflate.flush();
+            else
+                deflate.finish();
+
+            return new Stripe(compressed, adler.getValue(), (long)(last - first) * rowBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return the second byte of the zlib header, matching the level.
+     */
+    private int getHeaderFlags() {
+        if (level <= 1)
+            return 0x01;
+        if (level <= 5)
+            return 0x5E;
+        if (level == 6)
+            return 0x9C;
+
+        return 0xDA;
+    }
+
+    /**
+     * Combine the Adler-32 checksums of two blocks of data into the checksum 
+     * of the two blocks joined together, as zlib's adler32_combine(). 
+     * Package-private so that it can be checked against Adler32.
+     * 
+     * @param adler1 checksum of the first block.
+     * @param adler2 checksum of the second block.
+     * @param length2 length of the second block.
+     * @return the combined checksum.
+     */
+    static long combineAdler(long adler1, long adler2, long length2) {
+        final long BASE = 65521;
+        final long rem = length2 % BASE;
+
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (rem * sum1) % BASE;
+        sum1 += (adler2 & 0xFFFF) + BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF) + BASE - rem;
+
+        if (sum1 >= BASE) sum1 -= BASE;
+        if (sum1 >= BASE) sum1 -= BASE;
+        if (sum2 >= (BASE << 1)) sum2 -= (BASE << 1);
+        if (sum2 >= BASE) sum2 -= BASE;
+
+        return sum1 | (sum2 << 16);
+    }
+
+
+
+    /************************************************************************
+     * Support code for encoding rows.
+     */
+
+    /**
+     * Filter a range of rows and write them to the given stream. Only the 
+     * current and previous rows are held in memory.
+     * 
+     * @param image to read the rows from.
+     * @param first row to filter.
+     * @param last row to filter (exclusive).
+     * @param out stream to write the filtered rows to.
+     */
+    private void filterRows(RowSource image, int first, int last, OutputStream out) throws IOException {
+        final int width = image.getWidth();
+        final int stride = width * 4;
+        int[] pixels = new int[width];
+        byte[] previous = new byte[stride];
+        byte[] current = new byte[stride];
+        byte[] filtered = new byte[stride + 1];
+
+        if (first > 0) {
+            image.getRow(first - 1, pixels);
+            toRGBA(pixels, 0, width, previous);
+        }
+
+        for (int y = first; y < last; ++y) {
+            image.getRow(y, pixels);
+            toRGBA(pixels, 0, width, current);
+            filterRow(current, previous, filtered);
+            out.write(filtered, 0, filtered.length);
+
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+    }
+
+    /**
+     * Convert a row of ARGB pixels to RGBA bytes.
+     * 
+     * @param pixels of the image as ARGB values in row-major order.
+     * @param start index of the first pixel in the row.
+     * @param width of the image.
+     * @param row to fill with the RGBA bytes.
+     */
+    static void toRGBA(int[] pixels, int start, int width, byte[] row) {
+        for (int x = 0, i = 0; x < width; ++x) {
+            final int argb = pixels[start + x];
+            row[i++] = (byte)(argb >> 16);
+            row[i++] = (byte)(argb >> 8);
+            row[i++] = (byte)argb;
+            row[i++] = (byte)(argb >> 24);
+        }
+    }
+
+    /**
+     * Filter a row using the selected filter strategy.
+     * 
+     * @param current row of RGBA bytes.
+     * @param previous row of RGBA bytes, all zero for the first row.
+     * @param out filter type byte followed by the filtered row.
+     */
+    void filterRow(byte[] current, byte[] previous, byte[] out) {
+        if (filter != Filter.ADAPTIVE) {
+            applyFilter(filter.ordinal(), current, previous, out);
+
+            return;
+        }
+
+        // Pick the filter with the smallest sum of absolute differences, the 
+        // heuristic suggested by the PNG specification.
+        int best = 0;
+        long bestSum = Long.MAX_VALUE;
+        for (int type = 0; type <= Filter.PAETH.ordinal(); ++type) {
+            applyFilter(type, current, previous, out);
+
+            long sum = 0;
+            for (int i = 1; i < out.length && sum < bestSum; ++i)
+                sum += Math.abs(out[i]);
+
+            if (sum < bestSum) {
+                bestSum = sum;
+                best = type;
+            }
+        }
+
+        if (best != Filter.PAETH.ordinal())
+            applyFilter(best, current, previous, out);
+    }
+
+    /**
+     * Apply a single PNG filter type to a row.
+     * 
+     * @param type of filter, 0 to 4.
+     * @param current row of RGBA bytes.
+     * @param previous row of RGBA bytes.
+     * @param out filter type byte followed by the filtered row.
+     */
+    private static void applyFilter(int type, byte[] current, byte[] previous, byte[] out) {
+        final int bpp = 4;
+        out[0] = (byte)type;
+
+        for (int i = 0; i < current.length; ++i) {
+            final int x = current[i] & 0xFF;
+            final int a = i >= bpp ? current[i - bpp] & 0xFF : 0;
+            final int b = previous[i] & 0xFF;
+
+            int value;
+            switch (type) {
+            case 1: value = x - a; break;
+            case 2: value = x - b; break;
+            case 3: value = x - ((a + b) >> 1); break;
+            case 4: value = x - paeth(a, b, i >= bpp ? previous[i - bpp] & 0xFF : 0); break;
+            default: value = x; break;
+            }
+
+            out[i + 1] = (byte)value;
+        }
+    }
+
+    /**
+     * The Paeth predictor from the PNG specification.
+     */
+    private static int paeth(int a, int b, int c) {
+        final int p = a + b - c;
+        final int pa = Math.abs(p - a);
+        final int pb = Math.abs(p - b);
+        final int pc = Math.abs(p - c);
+
+        if (pa <= pb && pa <= pc)
+            return a;
+
+        return pb <= pc ? b : c;
+    }
+
+    /**
+     * Write a PNG chunk, with its length, type and CRC.
+     * 
+     * @param out stream to write to.
+     * @param type of chunk.
+     * @param data of the chunk.
+     * @param length of the data.
+     */
+    static void writeChunk(DataOutputStream out, String type, byte[] data, int length) throws IOException {
+        final byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data, 0, length);
+
+        out.writeInt(length);
+        out.write(name);
+        out.write(data, 0, length);
+        out.writeInt((int)crc.getValue());
+    }
+
+}
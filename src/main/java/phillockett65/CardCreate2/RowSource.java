@@ -0,0 +1,118 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * RowSource supplies the pixels of an image one row at a time as ARGB 
+ * values, so that an image can be masked, hashed and encoded without making 
+ * a full-size copy of it. Rows may be requested in any order and from 
+ * several threads at once.
+ */
+package phillockett65.CardCreate2;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.IntBuffer;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritablePixelFormat;
+
+
+public interface RowSource {
+
+    public int getWidth();
+    public int getHeight();
+
+    /**
+     * Copy a row of pixels.
+     * 
+     * @param y index of the row.
+     * @param row to fill with getWidth() ARGB values.
+     */
+    public void getRow(int y, int[] row);
+
+
+    /**
+     * Create a RowSource that reads straight from a BufferedImage.
+     * 
+     * @param image to read.
+     * @return the RowSource.
+     */
+    public static RowSource of(BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            final int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+
+            return new RowSource() {
+                public int getWidth() { return width; }
+                public int getHeight() { return height; }
+                public void getRow(int y, int[] row) { System.arraycopy(pixels, y * width, row, 0, width); }
+            };
+        }
+
+        return new RowSource() {
+            public int getWidth() { return width; }
+            public int getHeight() { return height; }
+            public void getRow(int y, int[] row) { image.getRGB(0, y, width, 1, row, 0, width); }
+        };
+    }
+
+    /**
+     * Create a RowSource that reads straight from a JavaFX Image.
+     * 
+     * @param image to read.
+     * @return the RowSource.
+     */
+    public static RowSource of(Image image) {
+        final int width = (int)image.getWidth();
+        final int height = (int)image.getHeight();
+        final PixelReader reader = image.getPixelReader();
+        final WritablePixelFormat<IntBuffer> format = PixelFormat.getIntArgbInstance();
+
+        return new RowSource() {
+            public int getWidth() { return width; }
+            public int getHeight() { return height; }
+            public void getRow(int y, int[] row) { reader.getPixels(0, y, width, 1, format, row, 0, width); }
+        };
+    }
+
+    /**
+     * Create a RowSource that applies a mask to the rows of this source.
+     * 
+     * @param mask to apply, which must be the same size as this source.
+     * @return the masked RowSource.
+     */
+    public default RowSource masked(CardMask mask) {
+        final RowSource source = this;
+
+        return new RowSource() {
+            public int getWidth() { return source.getWidth(); }
+            public int getHeight() { return source.getHeight(); }
+            public void getRow(int y, int[] row) {
+                source.getRow(y, row);
+                mask.applyRow(y, row);
+            }
+        };
+    }
+
+}
@@ -24,19 +24,12 @@
 package phillockett65.CardCreate2;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.util.stream.IntStream;
 
-import javafx.scene.SnapshotParameters;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
-import javafx.scene.image.PixelReader;
-import javafx.scene.image.PixelWriter;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
-import javafx.scene.paint.Color;
 
-import phillockett65.CardCreate2.sample.Default;
 import phillockett65.Debug.Debug;
 
 public class Utils {
@@ -45,7 +38,8 @@ public class Utils {
     private static final int DD = 0;
 
     /**
-     * Load an image file from disc.
+     * Load an image file from disc, using the shared ImageCache so that each 
+     * file is only decoded once while it is unchanged.
      * 
      * @param path to the image file.
      * @return the Image, or null if the file is not found.
@@ -60,88 +54,139 @@ public class Utils {
             return null;
         }
 
-        Image loadedImage = null;
-        try {
-            loadedImage = new Image(new FileInputStream(file));
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        }
+        final long start = GenerationStats.start();
+        final Image image = ImageCache.getInstance().get(file);
+        GenerationStats.record(GenerationStats.Stage.LOAD, start);
 
-        return loadedImage;
+        return image;
     }
 
     /**
-     * Rotate the given image by 180 degrees.
+     * Load an image file from disc and rotate it by 180 degrees, using the 
+     * shared ImageCache so that each file is only rotated once while it is 
+     * unchanged.
      * 
-     * @param image to rotate.
-     * @return the rotated Image.
+     * @param path to the image file.
+     * @return the rotated Image, or null if the file is not found.
      */
-    public static Image rotateImage(Image input) {
+    public static Image loadRotatedImage(String path) {
+        Debug.trace(DD, "loadRotatedImage(" + path + ")");
+        File file = new File(path);
+
+        if (!file.exists()) {
+            Debug.info(DD, "File does not exist!");
+
+            return null;
+        }
+
+        final long start = GenerationStats.start();
+        final Image image = ImageCache.getInstance().getRotated(file);
+        GenerationStats.record(GenerationStats.Stage.LOAD, start);
 
-        PixelReader reader = input.getPixelReader();
+        return image;
+    }
 
-        int width = (int)input.getWidth();
-        int height = (int)input.getHeight();
+    /************************************************************************
+     * Bulk pixel kernels. Pixels are handled as int ARGB values in row-major 
+     * int[] buffers, avoiding a Color object per pixel.
+     */
 
-        WritableImage output = new WritableImage(width, height);
-        PixelWriter writer = output.getPixelWriter();
-
-        // Hand draw rotated image.
-        int a = width-1;
-        int b = height-1;
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                final Color color = reader.getColor(x, y);
-                
-                writer.setColor(a, b, color);
-                a--;
-            }
-            a = width-1;
-            b--;
+    // Images with more pixels than this are processed in parallel stripes.
+    private static final int PARALLEL_THRESHOLD = 512 * 512;
+    private static final int STRIPE_ROWS = 64;
+
+    /**
+     * Operation applied to a stripe of rows of a pixel buffer.
+     */
+    public interface RowKernel {
+        /**
+         * @param first row of the stripe.
+         * @param last row of the stripe (exclusive).
+         */
+        void apply(int first, int last);
+    }
+
+    /**
+     * Apply the kernel to all the rows of an image, splitting the rows into 
+     * stripes that are processed in parallel when the image is large.
+     * 
+     * @param width of the image.
+     * @param height of the image.
+     * @param kernel to apply to each stripe of rows.
+     */
+    public static void processRows(int width, int height, RowKernel kernel) {
+        if ((long)width * height < PARALLEL_THRESHOLD) {
+            kernel.apply(0, height);
+
+            return;
         }
 
-        return output;
+        final int stripes = (height + STRIPE_ROWS - 1) / STRIPE_ROWS;
+        IntStream.range(0, stripes).parallel().forEach(stripe -> {
+            final int first = stripe * STRIPE_ROWS;
+            kernel.apply(first, Math.min(first + STRIPE_ROWS, height));
+        });
     }
 
+    /**
+     * Read all the pixels of an image in a single bulk operation.
+     * 
+     * @param image to read.
+     * @return the ARGB pixels in row-major order.
+     */
+    public static int[] getPixels(Image image) {
+        final int width = (int)image.getWidth();
+        final int height = (int)image.getHeight();
+        int[] pixels = new int[width * height];
 
-    public static final Color opaque = Color.BLACK;
-    public static final Color transparent = Color.WHITE;
+        image.getPixelReader().getPixels(0, 0, width, height, 
+            PixelFormat.getIntArgbInstance(), pixels, 0, width);
+
+        return pixels;
+    }
 
     /**
-     * Create a mask that is suitable for cropping cards. Must be run from the 
-     * Application thread.
+     * Create an image from pixels in a single bulk operation.
      * 
-     * @param width of the card.
-     * @param height of the card.
-     * @param arcWidth of the corner of the card.
-     * @param arcHeight of the corner of the card.
-     * @return the created mask.
+     * @param pixels ARGB values in row-major order.
+     * @param width of the image.
+     * @param height of the image.
+     * @return the new WritableImage.
      */
-    public static WritableImage createMask(double width, double height, double arcWidth, double arcHeight) {
+    public static WritableImage setPixels(int[] pixels, int width, int height) {
+        WritableImage output = new WritableImage(width, height);
 
-        // Create mask.
-        Canvas canvas = new Canvas(width, height);
-        GraphicsContext gc = canvas.getGraphicsContext2D();
+        output.getPixelWriter().setPixels(0, 0, width, height, 
+            PixelFormat.getIntArgbInstance(), pixels, 0, width);
 
-        gc.setFill(transparent);
-        gc.fillRect(0, 0, width, height);
-        gc.setFill(opaque);
-        gc.fillRoundRect(0, 0, width, height, arcWidth, arcHeight);
+        return output;
+    }
 
-        gc.setStroke(opaque);
-        gc.setLineWidth(Default.BORDER_WIDTH.getInt());
-        gc.strokeRoundRect(0, 0, width, height, arcWidth, arcHeight);
+    /**
+     * Rotate the given image by 180 degrees.
+     * 
+     * @param image to rotate.
+     * @return the rotated Image.
+     */
+    public static Image rotateImage(Image input) {
+        final long start = GenerationStats.start();
 
-        WritableImage mask = null;
-        SnapshotParameters parameters = new SnapshotParameters();
+        final int width = (int)input.getWidth();
+        final int height = (int)input.getHeight();
+        final int[] source = getPixels(input);
+        final int[] rotated = new int[source.length];
+        final int last = source.length - 1;
 
-        try {
-            mask = canvas.snapshot(parameters, null);
-        } catch (IllegalStateException e) {
-            e.printStackTrace();
-        }
+        // A 180 degree rotation reverses the order of the pixels.
+        processRows(width, height, (first, end) -> {
+            for (int i = first * width; i < end * width; ++i)
+                rotated[last - i] = source[i];
+        });
+
+        final Image image = setPixels(rotated, width, height);
+        GenerationStats.record(GenerationStats.Stage.ROTATE, start);
 
-        return mask;
+        return image;
     }
 
 }
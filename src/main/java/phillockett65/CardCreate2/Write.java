@@ -24,17 +24,13 @@
 package phillockett65.CardCreate2;
 
 import java.awt.image.BufferedImage;
-import java.io.File;
-
-import javax.imageio.ImageIO;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.CancellationException;
 
 import javafx.concurrent.Task;
-import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.image.Image;
-import javafx.scene.image.PixelReader;
-import javafx.scene.image.PixelWriter;
-import javafx.scene.image.WritableImage;
-import javafx.scene.paint.Color;
 
 import phillockett65.CardCreate2.sample.Default;
 import phillockett65.Debug.Debug;
@@ -45,10 +41,19 @@ public class Write extends Task<Long> {
     // Debug delta used to adjust the local logging level.
     private static final int DD = 0;
 
-    private final Model model;
-    private final Image mask;
+    private final CardMask mask;
+    private final Encoder encoder;
+    private final CardOutput output;
+    private final int id;
     private Long progress;
     private Image snapshot;
+    private BufferedImage rendered;
+    private volatile boolean saved = false;
+    private volatile boolean skipped = false;
+
+    private boolean hashing = false;
+    private String previousHash = null;
+    private volatile String contentHash = null;
 
 
     /**
@@ -56,58 +61,163 @@ public class Write extends Task<Long> {
      * 
      * @param progress so far.
      * @param mask to apply to final image, may be null.
+     * @param encoder used to encode the image.
      * @param image to to save to disc.
+     * @param output to save the image to.
+     * @param id position in the deck of the card.
      */
-    public Write(Long progress, Image mask, Image image) {
-        model = Model.getInstance();
+    public Write(Long progress, CardMask mask, Encoder encoder, Image image, CardOutput output, int id) {
         this.progress = progress;
         this.mask = mask;
+        this.encoder = encoder;
         this.snapshot = image;
+        this.output = output;
+        this.id = id;
 
         // Update progress bar to stop it jittering.
         updateProgress(progress, Default.GENERATE_STEPS.getInt());
     }
 
-    private WritableImage applyMask(Image input) {
+    /**
+     * Write task constructor for cards drawn using headless rendering.
+     * 
+     * @param progress so far.
+     * @param mask to apply to final image, may be null.
+     * @param encoder used to encode the image.
+     * @param image to to save to disc.
+     * @param output to save the image to.
+     * @param id position in the deck of the card.
+     */
+    public Write(Long progress, CardMask mask, Encoder encoder, BufferedImage image, CardOutput output, int id) {
+        this(progress, mask, encoder, (Image)null, output, id);
+        this.rendered = image;
+    }
 
-        PixelReader maskReader = mask.getPixelReader();
-        PixelReader reader = input.getPixelReader();
+    /**
+     * Get the final rows of the card, read straight from the drawn image 
+     * with the mask applied as each row is read. The interior of the card is 
+     * left untouched by the mask.
+     * 
+     * @return the RowSource for the card.
+     */
+    private RowSource getRows() {
+        RowSource source = rendered != null ? RowSource.of(rendered) : RowSource.of(snapshot);
+        if (mask == null)
+            return source;
 
-        int width = (int)input.getWidth();
-        int height = (int)input.getHeight();
+        if (mask.getWidth() != source.getWidth() || mask.getHeight() != source.getHeight()) {
+            Debug.major(DD, "getRows() - Mask size does not match the card");
 
-        WritableImage output = new WritableImage(width, height);
-        PixelWriter writer = output.getPixelWriter();
+            return source;
+        }
 
-        // Blend image and mask.
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                final Color color = reader.getColor(x, y);
-                final boolean show = maskReader.getColor(x, y).equals(Utils.opaque);
+        return source.masked(mask);
+    }
 
-                if (show)
-                    writer.setColor(x, y, color);
+    /**
+     * Wrap the rows so that reading stops part way through the card if the 
+     * task is cancelled.
+     * 
+     * @param source of the rows.
+     * @return the RowSource that checks for cancellation on each row.
+     */
+    private RowSource cancellable(RowSource source) {
+        return new RowSource() {
+            public int getWidth() { return source.getWidth(); }
+            public int getHeight() { return source.getHeight(); }
+            public void getRow(int y, int[] row) {
+                if (isCancelled())
+                    throw new CancellationException("Card " + id + " cancelled");
+
+                source.getRow(y, row);
             }
+        };
+    }
+
+    /**
+     * Hash the final pixels of the card before saving, and skip saving if 
+     * they match the hash of the image already on disc.
+     * 
+     * @param previous hash of the image already on disc, may be null.
+     */
+    public void setContentCheck(String previous) {
+        hashing = true;
+        previousHash = previous;
+    }
+
+    /**
+     * @return true if the image was successfully saved, or did not need to 
+     * be saved, false otherwise.
+     */
+    public boolean isSaved() { return saved; }
+
+    /**
+     * @return true if saving was skipped because the image on disc already 
+     * has identical pixels.
+     */
+    public boolean isSkipped() { return skipped; }
+
+    /**
+     * @return the hash of the final pixels, or null if not hashed.
+     */
+    public String getContentHash() { return contentHash; }
+
+    /**
+     * Generate a SHA-256 hash of the encoder settings and the size and 
+     * pixels of an image.
+     * 
+     * @param image to hash, read a row at a time.
+     * @return the hash as a hex string.
+     */
+    private String hash(RowSource image) throws Exception {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(encoder.getDescription().getBytes(StandardCharsets.UTF_8));
+
+        int[] pixels = new int[width];
+        ByteBuffer row = ByteBuffer.allocate(Math.max(width, 2) * 4);
+
+        row.putInt(width).putInt(height);
+        digest.update(row.array(), 0, 8);
+
+        for (int y = 0; y < height; ++y) {
+            image.getRow(y, pixels);
+            row.clear();
+            row.asIntBuffer().put(pixels);
+            digest.update(row.array(), 0, width * 4);
         }
 
-        return output;
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest())
+            hex.append(String.format("%02x", b));
+
+        return hex.toString();
     }
 
     private boolean save() {
         boolean success = false;
 
         try {
-            final BufferedImage image;
-            if (mask == null) {
-                image = SwingFXUtils.fromFXImage(snapshot, null);
-            } else {
-                Image cropped = applyMask(snapshot);
-                image = SwingFXUtils.fromFXImage(cropped, null);
-            }
+            final RowSource image = cancellable(getRows());
 
-            final String outputPath = model.currentOutputImagePath();
+            if (hashing) {
+                final long start = GenerationStats.start();
+                contentHash = hash(image);
+                GenerationStats.record(GenerationStats.Stage.HASH, start);
+                if (contentHash.equals(previousHash)) {
+                    skipped = true;
 
-            success = ImageIO.write(image, "png", new File(outputPath));
+                    return true;
+                }
+            }
+
+            final long start = GenerationStats.start();
+            output.write(id, image, encoder);
+            GenerationStats.record(GenerationStats.Stage.SAVE, start);
+            success = true;
+        } catch (CancellationException e) {
+            Debug.info(DD, "write() - " + e.getMessage());
         } catch (Exception e) {
             Debug.critical(DD, "write() - Failed saving image: " + e);
         }
@@ -126,7 +236,11 @@ public class Write extends Task<Long> {
             return progress;
         }
 
-        save();
+        saved = save();
+
+        // Release the image as soon as it has been saved.
+        snapshot = null;
+        rendered = null;
 
         updateProgress(++progress, Default.GENERATE_STEPS.getInt());
 
@@ -0,0 +1,107 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ZipOutput stores the cards as entries in a single ZIP archive, in the 
+ * order the cards are finished. Each card is encoded in parallel with the 
+ * others, and only adding the entry to the archive is done one card at a 
+ * time. PNG cards are already compressed, so they are stored rather than 
+ * deflated again.
+ */
+package phillockett65.CardCreate2;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+
+public class ZipOutput implements CardOutput {
+
+    private final String path;
+    private final String[] names;
+    private final ZipOutputStream zip;
+
+
+    /**
+     * ZipOutput constructor, creates the archive.
+     * 
+     * @param path of the archive file.
+     * @param names of the entry for each card, indexed by position in the 
+     * deck.
+     */
+    public ZipOutput(String path, String[] names) throws IOException {
+        this.path = path;
+        this.names = names;
+        zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(path), 64 * 1024));
+    }
+
+    @Override
+    public void write(int id, RowSource image, Encoder encoder) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        encoder.encode(image, data);
+
+        ZipEntry entry = new ZipEntry(names[id]);
+        if (encoder.getExtension().equals("png")) {
+            final byte[] bytes = data.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(bytes.length);
+            entry.setCompressedSize(bytes.length);
+            entry.setCrc(crc.getValue());
+        }
+
+        synchronized (zip) {
+            zip.putNextEntry(entry);
+            data.writeTo(zip);
+            zip.closeEntry();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (zip) {
+            zip.close();
+        }
+    }
+
+    /**
+     * Close and delete the incomplete archive.
+     */
+    @Override
+    public void abort() {
+        synchronized (zip) {
+            try {
+                zip.close();
+            } catch (IOException e) {
+                // The archive is being deleted anyway.
+            }
+        }
+
+        new File(path).delete();
+    }
+
+}
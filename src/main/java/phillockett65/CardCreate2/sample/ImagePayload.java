@@ -23,9 +23,11 @@
  */
 package phillockett65.CardCreate2.sample;
 
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import phillockett65.CardCreate2.CardGraphics;
+import phillockett65.CardCreate2.GenerationSpec;
+import phillockett65.CardCreate2.Model;
 import phillockett65.Debug.Debug;
 
 
@@ -312,6 +314,14 @@ public class ImagePayload extends Payload {
         paintImage();
     }
 
+    /**
+     * @return the current position and size of the image in pixels.
+     */
+    @Override
+    public GenerationSpec.Layout getLayout() {
+        return new GenerationSpec.Layout(centreX.getPixels(), centreY.getPixels(), spriteHeight.getPixels(), keepAspectRatio);
+    }
+
     /**
      * Hide/display all locations of icons for this item.
      * @param state if true, display the icons, hide them otherwise.
@@ -338,26 +348,29 @@ public class ImagePayload extends Payload {
      * given graphics context using the user specification.
      * 
      * @param gc graphics context to draw on.
+     * @param spec the settings captured for the generation.
      * @param iconImage used for the icons.
      * @param rotatedImage rotated version of the image used for the icons.
      * @return true if the icons are drawn, false otherwise.
      */
-    public boolean drawCard(GraphicsContext gc, Image iconImage, Image rotatedImage) {
+    public boolean drawCard(CardGraphics gc, GenerationSpec spec, Image iconImage, Image rotatedImage) {
         if (iconImage == null)
             return false;
 
-        final double cardWidthPX = model.getWidth();
-        final double cardHeightPX = model.getHeight();
-        final double xOffset = model.getMpcBorderWidth();
-        final double yOffset = model.getMpcBorderHeight();
+        final GenerationSpec.Layout layout = spec.getLayout(Model.FACE_ID);
+        final double cardWidthPX = spec.getWidth();
+        final double cardHeightPX = spec.getHeight();
+        final double xOffset = spec.getXOffset();
+        final double yOffset = spec.getYOffset();
+        final boolean keepAspectRatio = layout.isKeepAspectRatio();
 
         Debug.trace(DD, "drawImage()");
         final double imageWidthPX = iconImage.getWidth();
         final double imageHeightPX = iconImage.getHeight();
         final boolean landscape = imageHeightPX < imageWidthPX;
 
-        final double pixelsX = centreX.getPixels();
-        final double pixelsY = centreY.getPixels();
+        final double pixelsX = layout.getX();
+        final double pixelsY = layout.getY();
         double winX = cardWidthPX - (2*pixelsX);
         double winY;
 
@@ -411,22 +424,23 @@ public class ImagePayload extends Payload {
      * specification for the Joker image.
      * 
      * @param gc graphics context to draw on.
+     * @param spec the settings captured for the generation.
      * @param image used for the icons.
      * @return true if the icons are drawn, false otherwise.
      */
-    public boolean drawJoker(GraphicsContext gc, Image image) {
+    public boolean drawJoker(CardGraphics gc, GenerationSpec spec, Image image) {
         if (image == null)
             return false;
 
-        final double cardWidthPX = model.getWidth();
-        final double cardHeightPX = model.getHeight();
-        final double xOffset = model.getMpcBorderWidth();
-        final double yOffset = model.getMpcBorderHeight();
+        final double cardWidthPX = spec.getWidth();
+        final double cardHeightPX = spec.getHeight();
+        final double xOffset = spec.getXOffset();
+        final double yOffset = spec.getYOffset();
 
         final double imageWidthPX = image.getWidth();
         final double imageHeightPX = image.getHeight();
 
-        final boolean borderless = model.isBorderlessJokers();
+        final boolean borderless = spec.isBorderlessJokers();
         final double pixelsX = borderless ? 0 : cardWidthPX * 0.07D;
         final double pixelsY = borderless ? 0 : cardHeightPX * 0.05D;
         double winX = cardWidthPX;
@@ -24,9 +24,10 @@
 package phillockett65.CardCreate2.sample;
 
 import javafx.scene.Group;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import phillockett65.CardCreate2.CardGraphics;
+import phillockett65.CardCreate2.GenerationSpec;
 import phillockett65.Debug.Debug;
 
 
@@ -443,16 +444,17 @@ public class MultiPayload extends Payload {
      * Draw icons to a given graphics context using the user specification.
      * 
      * @param gc graphics context to draw on.
+     * @param spec the settings captured for the generation.
      * @param iconImage used for the icons.
      * @param rotatedImage rotated version of the image used for the icons.
      * @param pattern indicating the arrangement of icons.
      * @return true if the icons are drawn, false otherwise.
      */
-    public boolean drawCard(GraphicsContext gc, Image iconImage, Image rotatedImage, int pattern) {
+    public boolean drawCard(CardGraphics gc, GenerationSpec spec, Image iconImage, Image rotatedImage, int pattern) {
         if (iconImage == null)
             return false;
 
-        final Data data = new Data(iconImage);
+        final Data data = new Data(spec, iconImage);
 
         for (int i = 0; i < getImageCount(); ++i) {
             if (isIconVisible(pattern, i)) {
@@ -25,10 +25,11 @@
 package phillockett65.CardCreate2.sample;
 
 import javafx.scene.Group;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 
+import phillockett65.CardCreate2.CardGraphics;
+import phillockett65.CardCreate2.GenerationSpec;
 import phillockett65.CardCreate2.CardItemData;
 import phillockett65.CardCreate2.Model;
 import phillockett65.CardCreate2.Utils;
@@ -704,6 +705,13 @@ public class Payload {
      * Support code for Playing Card Generation.
      */
 
+    /**
+     * @return the current position and size of the icons in pixels.
+     */
+    public GenerationSpec.Layout getLayout() {
+        return new GenerationSpec.Layout(centreX.getPixels(), centreY.getPixels(), spriteHeight.getPixels(), true);
+    }
+
     /**
      * Class to build the data needed to render the icons.
      */
@@ -723,22 +731,44 @@ public class Payload {
         public final double originX;
         public final double originY;
 
+        /**
+         * Build the data using the current settings.
+         * 
+         * @param iconImage used for the icons.
+         */
         public Data(Image iconImage) {
-            cardWidthPX = model.getWidth();
-            cardHeightPX = model.getHeight();
+            this(iconImage, model.getWidth(), model.getHeight(), 
+                model.getMpcBorderWidth(), model.getMpcBorderHeight(), getLayout());
+        }
+
+        /**
+         * Build the data using the settings captured for a generation.
+         * 
+         * @param spec the settings captured for the generation.
+         * @param iconImage used for the icons.
+         */
+        public Data(GenerationSpec spec, Image iconImage) {
+            this(iconImage, spec.getWidth(), spec.getHeight(), 
+                spec.getXOffset(), spec.getYOffset(), spec.getLayout(item.index()));
+        }
+
+        private Data(Image iconImage, double cardWidthPX, double cardHeightPX, 
+            double xOffset, double yOffset, GenerationSpec.Layout layout) {
+            this.cardWidthPX = cardWidthPX;
+            this.cardHeightPX = cardHeightPX;
 
             iconWidthPX = iconImage.getWidth();
             iconHeightPX = iconImage.getHeight();
-            height = spriteHeight.getPixels();
+            height = layout.getHeight();
             width = height * iconWidthPX / iconHeightPX;
     
-            pixelsX = centreX.getPixels();
-            pixelsY = centreY.getPixels();
+            pixelsX = layout.getX();
+            pixelsY = layout.getY();
             winX = cardWidthPX - (2*pixelsX);
             winY = cardHeightPX - (2*pixelsY);
     
-            originX = pixelsX - (width/2) + model.getMpcBorderWidth();
-            originY = pixelsY - (height/2) + model.getMpcBorderHeight();
+            originX = pixelsX - (width/2) + xOffset;
+            originY = pixelsY - (height/2) + yOffset;
         }
      }
 
@@ -748,15 +778,16 @@ public class Payload {
      * context using hard coded specification.
      * 
      * @param gc graphics context to draw on.
+     * @param spec the settings captured for the generation.
      * @param iconImage used for the icons.
      * @param rotatedImage rotated version of the image used for the icons.
      * @return true if the icons are drawn, false otherwise.
      */
-    public boolean drawCard(GraphicsContext gc, Image iconImage, Image rotatedImage) {
+    public boolean drawCard(CardGraphics gc, GenerationSpec spec, Image iconImage, Image rotatedImage) {
         if (iconImage == null)
             return false;
 
-        final Data data = new Data(iconImage);
+        final Data data = new Data(spec, iconImage);
 
         double posX = data.originX;
         double posY = data.originY;
@@ -774,18 +805,19 @@ public class Payload {
      * context for the Joker indices.
      * 
      * @param gc graphics context to draw on.
+     * @param spec the settings captured for the generation.
      * @param iconImage used for the icons.
      * @param rotatedImage rotated version of the image used for the icons.
      * @return true if the icons are drawn, false otherwise.
      */
-    public boolean drawJoker(GraphicsContext gc, Image iconImage, Image rotatedImage) {
-        if (image == null)
+    public boolean drawJoker(CardGraphics gc, GenerationSpec spec, Image iconImage, Image rotatedImage) {
+        if (iconImage == null)
             return false;
 
-        final double cardWidthPX = model.getWidth();
-        final double cardHeightPX = model.getHeight();
-        final double xOffset = model.getMpcBorderWidth();
-        final double yOffset = model.getMpcBorderHeight();
+        final double cardWidthPX = spec.getWidth();
+        final double cardHeightPX = spec.getHeight();
+        final double xOffset = spec.getXOffset();
+        final double yOffset = spec.getYOffset();
 
         final double iconWidthPX = iconImage.getWidth();
         final double iconHeightPX = iconImage.getHeight();
@@ -801,13 +833,13 @@ public class Payload {
             width = height * iconWidthPX / iconHeightPX;
 
             posX = cardHeightPX * 0.02;
-            posY = model.getArcWidthPX()/4;
+            posY = spec.getArcWidthPX()/4;
         } else {
             width = cardWidthPX * 0.07;
             height = width * iconHeightPX / iconWidthPX;
 
             posX = cardWidthPX * 0.02;
-            posY = model.getArcHeightPX()/4;
+            posY = spec.getArcHeightPX()/4;
         }
         gc.drawImage(iconImage, posX + xOffset, posY + yOffset, width, height);
 
@@ -25,9 +25,10 @@
 package phillockett65.CardCreate2.sample;
 
 import javafx.scene.Group;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import phillockett65.CardCreate2.CardGraphics;
+import phillockett65.CardCreate2.GenerationSpec;
 import phillockett65.Debug.Debug;
 
 
@@ -444,15 +445,16 @@ public class QuadPayload extends Payload {
      * Draw icons to a given graphics context using the user specification.
      * 
      * @param gc graphics context to draw on.
+     * @param spec the settings captured for the generation.
      * @param iconImage used for the icons.
      * @param rotatedImage rotated version of the image used for the icons.
      * @return true if the icons are drawn, false otherwise.
      */
-    public boolean drawCard(GraphicsContext gc, Image iconImage, Image rotatedImage) {
+    public boolean drawCard(CardGraphics gc, GenerationSpec spec, Image iconImage, Image rotatedImage) {
         if (iconImage == null)
             return false;
 
-        final Data data = new Data(iconImage);
+        final Data data = new Data(spec, iconImage);
 
         double posX = data.originX;
         double posY = data.originY;
@@ -462,7 +464,7 @@ public class QuadPayload extends Payload {
         posY += data.winY;
         gc.drawImage(rotatedImage, posX, posY, data.width, data.height);
 
-        if (!model.isLeftHanded())
+        if (!spec.isLeftHanded())
             return true;
 
         // Add left-handed indices and corner pips.
@@ -0,0 +1,186 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * AtlasOutputTest checks the size and layout chosen by each packing, that 
+ * atlases too large to be read back are rejected before any card is drawn, 
+ * that the streamed atlas holds every card in its place and that no 
+ * temporary files are left in the output directory.
+ */
+package phillockett65.CardCreate2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class AtlasOutputTest {
+
+    private static final int CARDS = 56;
+
+    @TempDir
+    Path directory;
+
+    private static String[] getNames() {
+        String[] names = new String[CARDS];
+        for (int id = 0; id < CARDS; ++id)
+            names[id] = "card" + id;
+
+        return names;
+    }
+
+    private AtlasOutput create(int cardWidth, int cardHeight, String packing) throws IOException {
+        return new AtlasOutput(directory.toString(), getNames(), cardWidth, cardHeight, 2, 
+            packing, AtlasOutput.JSON_SIDECAR, new PngEncoder(6, PngEncoder.Filter.ADAPTIVE));
+    }
+
+    private String[] list() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString()).sorted().toArray(String[]::new);
+        }
+    }
+
+    @Test
+    public void testGridPacking() throws IOException {
+        AtlasOutput atlas = create(30, 40, AtlasOutput.GRID_PACKING);
+        try {
+            // A row of 14 cards for each suit.
+            assertEquals(14 * 32 + 2, atlas.getWidth());
+            assertEquals(4 * 42 + 2, atlas.getHeight());
+            assertEquals(2, atlas.getX(0));
+            assertEquals(2, atlas.getY(0));
+            assertEquals(2 + 13 * 32, atlas.getX(13));
+            assertEquals(2 + 42, atlas.getY(14));
+        } finally {
+            atlas.abort();
+        }
+    }
+
+    @Test
+    public void testPowerOfTwoPacking() throws IOException {
+        AtlasOutput atlas = create(30, 40, AtlasOutput.POWER_OF_TWO_PACKING);
+        try {
+            // The squarest of the smallest layouts has 5 columns.
+            assertEquals(256, atlas.getWidth());
+            assertEquals(512, atlas.getHeight());
+            assertEquals(2, atlas.getX(5));
+            assertEquals(2 + 42, atlas.getY(5));
+
+            for (int id = 0; id < CARDS; ++id) {
+                assertTrue(atlas.getX(id) + 30 + 2 <= atlas.getWidth(), "card " + id);
+                assertTrue(atlas.getY(id) + 40 + 2 <= atlas.getHeight(), "card " + id);
+            }
+        } finally {
+            atlas.abort();
+        }
+    }
+
+    @Test
+    public void testIsValidSize() {
+        assertTrue(AtlasOutput.isValidSize(1, 1));
+        assertTrue(AtlasOutput.isValidSize(46340, 46340));
+        assertTrue(AtlasOutput.isValidSize(Integer.MAX_VALUE, 1));
+        assertFalse(AtlasOutput.isValidSize(46341, 46341));
+        assertFalse(AtlasOutput.isValidSize(65536, 32768));
+        assertFalse(AtlasOutput.isValidSize(Integer.MAX_VALUE + 1L, 1));
+        assertFalse(AtlasOutput.isValidSize(0, 1));
+    }
+
+    @Test
+    public void testNextPowerOfTwo() {
+        assertEquals(1, AtlasOutput.nextPowerOfTwo(1));
+        assertEquals(256, AtlasOutput.nextPowerOfTwo(256));
+        assertEquals(512, AtlasOutput.nextPowerOfTwo(257));
+        assertEquals(1L << 31, AtlasOutput.nextPowerOfTwo(Integer.MAX_VALUE));
+        assertEquals(1L << 32, AtlasOutput.nextPowerOfTwo((1L << 31) + 1));
+    }
+
+    @Test
+    public void testTooLarge() {
+        // Every power-of-two layout of these cards is over the limit, even 
+        // though the grid layout is not.
+        assertThrows(IOException.class, () -> create(3800, 5320, AtlasOutput.POWER_OF_TWO_PACKING));
+        assertThrows(IOException.class, () -> create(10000, 10000, AtlasOutput.GRID_PACKING));
+    }
+
+    @Test
+    public void testAtlasContents() throws IOException {
+        final int width = 6;
+        final int height = 4;
+        AtlasOutput atlas = create(width, height, AtlasOutput.POWER_OF_TWO_PACKING);
+        final PngEncoder encoder = new PngEncoder(6, PngEncoder.Filter.ADAPTIVE);
+
+        for (int id = CARDS - 1; id >= 0; --id) {
+            BufferedImage card = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            for (int y = 0; y < height; ++y)
+                for (int x = 0; x < width; ++x)
+                    card.setRGB(x, y, getColour(id, x, y));
+
+            atlas.write(id, RowSource.of(card), encoder);
+        }
+        atlas.close();
+
+        assertEquals(Arrays.asList("atlas.json", "atlas.png"), Arrays.asList(list()), "temporary files removed");
+        BufferedImage image = ImageIO.read(new File(directory.toFile(), "atlas.png"));
+        assertEquals(atlas.getWidth(), image.getWidth());
+        assertEquals(atlas.getHeight(), image.getHeight());
+
+        int opaque = 0;
+        for (int y = 0; y < image.getHeight(); ++y)
+            for (int x = 0; x < image.getWidth(); ++x)
+                if ((image.getRGB(x, y) >>> 24) != 0)
+                    ++opaque;
+        assertEquals(CARDS * width * height, opaque, "only the cards are drawn");
+
+        for (int id = 0; id < CARDS; ++id)
+            for (int y = 0; y < height; ++y)
+                for (int x = 0; x < width; ++x)
+                    assertEquals(getColour(id, x, y), image.getRGB(atlas.getX(id) + x, atlas.getY(id) + y), 
+                        "card " + id + " pixel (" + x + ", " + y + ")");
+    }
+
+    @Test
+    public void testAbort() throws IOException {
+        AtlasOutput atlas = create(30, 40, AtlasOutput.GRID_PACKING);
+        atlas.write(0, RowSource.of(new BufferedImage(30, 40, BufferedImage.TYPE_INT_ARGB)), null);
+        atlas.abort();
+
+        assertEquals(0, list().length, "temporary file removed");
+    }
+
+    private static int getColour(int id, int x, int y) {
+        return 0xFF000000 | (id << 16) | (x << 8) | y;
+    }
+
+}
@@ -0,0 +1,121 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CardMaskTest checks the corner spans computed for a card geometry, that
+ * the bottom corners mirror the top corners and that only the pixels
+ * outside the card are made transparent.
+ */
+package phillockett65.CardCreate2;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+
+public class CardMaskTest {
+
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 140;
+    private static final double ARC = 20;
+
+    private static int[] getRow(int width) {
+        int[] row = new int[width];
+        Arrays.fill(row, 0xFFFFFFFF);
+
+        return row;
+    }
+
+    @Test
+    public void testSquareCorners() {
+        CardMask mask = CardMask.getMask(WIDTH, HEIGHT, 0, 0);
+
+        assertEquals(0, mask.getCornerHeight());
+    }
+
+    @Test
+    public void testSpans() {
+        CardMask mask = CardMask.getMask(WIDTH, HEIGHT, ARC, ARC);
+        final int rows = mask.getCornerHeight();
+
+        // The corners cover at most the radius of the arc.
+        assertTrue(rows > 0);
+        assertTrue(rows <= ARC / 2);
+
+        // The top row is cut back furthest and the cut narrows moving down.
+        assertTrue(mask.getSpan(0) > 0);
+        assertTrue(mask.getSpan(0) <= ARC / 2);
+        for (int y = 1; y < rows; ++y)
+            assertTrue(mask.getSpan(y) <= mask.getSpan(y - 1), "Row " + y);
+
+        // The last corner row still has a transparent pixel.
+        assertTrue(mask.getSpan(rows - 1) > 0);
+    }
+
+    @Test
+    public void testCached() {
+        assertSame(CardMask.getMask(WIDTH, HEIGHT, ARC, ARC), CardMask.getMask(WIDTH, HEIGHT, ARC, ARC));
+    }
+
+    @Test
+    public void testSmallCard() {
+        // An arc larger than the card is limited to the card.
+        CardMask mask = CardMask.getMask(8, 6, 40, 40);
+
+        assertTrue(mask.getCornerHeight() <= 3);
+        for (int y = 0; y < mask.getCornerHeight(); ++y)
+            assertTrue(mask.getSpan(y) <= 4, "Row " + y);
+    }
+
+    @Test
+    public void testApplyRow() {
+        CardMask mask = CardMask.getMask(WIDTH, HEIGHT, ARC, ARC);
+        final int rows = mask.getCornerHeight();
+
+        for (int y = 0; y < rows; ++y) {
+            final int span = mask.getSpan(y);
+            int[] top = getRow(WIDTH);
+            int[] bottom = getRow(WIDTH);
+            mask.applyRow(y, top);
+            mask.applyRow(HEIGHT - 1 - y, bottom);
+
+            // The bottom corners are the mirror image of the top corners.
+            assertArrayEquals(top, bottom, "Row " + y);
+
+            for (int x = 0; x < WIDTH; ++x) {
+                final boolean outside = x < span || x >= WIDTH - span;
+                assertEquals(outside ? 0 : 0xFFFFFFFF, top[x], "Pixel " + x + " of row " + y);
+            }
+        }
+
+        // Rows between the corners are untouched.
+        int[] middle = getRow(WIDTH);
+        mask.applyRow(rows, middle);
+        mask.applyRow(HEIGHT / 2, middle);
+        mask.applyRow(HEIGHT - 1 - rows, middle);
+        assertArrayEquals(getRow(WIDTH), middle);
+    }
+
+}
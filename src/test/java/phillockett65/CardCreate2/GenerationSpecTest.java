@@ -0,0 +1,162 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * GenerationSpecTest checks that the settings hash of a card is repeatable 
+ * and only changes for the cards that a change of setting affects.
+ */
+package phillockett65.CardCreate2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.function.IntPredicate;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import phillockett65.CardCreate2.sample.Default;
+
+
+public class GenerationSpecTest {
+
+    private static final int COUNT = Default.DECK_COUNT.getInt();
+
+    @TempDir
+    static File base;
+
+    @TempDir
+    static File output;
+
+    private static Model model;
+
+    @BeforeAll
+    public static void setUp() throws IOException {
+        HeadlessToolkit.start();
+        TestAssets.create(base);
+        model = TestAssets.setUpModel(base, output);
+    }
+
+    private static String[] getHashes() {
+        model.startGenerate();
+        try {
+            final GenerationSpec spec = model.getGenerationSpec();
+            String[] hashes = new String[COUNT];
+            for (int id = 0; id < COUNT; ++id)
+                hashes[id] = spec.getSettingsHash(id);
+
+            return hashes;
+        } finally {
+            model.finishGenerate();
+        }
+    }
+
+    /**
+     * Check which cards have a different hash after a change of setting.
+     * 
+     * @param before hashes of each card.
+     * @param after hashes of each card.
+     * @param changed returns true for the cards expected to change.
+     */
+    private static void check(String[] before, String[] after, IntPredicate changed) {
+        for (int id = 0; id < COUNT; ++id)
+            if (changed.test(id))
+                assertNotEquals(before[id], after[id], "Card " + id);
+            else
+                assertEquals(before[id], after[id], "Card " + id);
+    }
+
+    private static boolean isJoker(int id) { return id % Default.CARD_COUNT.getInt() == 0; }
+    private static boolean isNumber(int id) { return !isJoker(id) && id % Default.CARD_COUNT.getInt() <= 10; }
+
+    @Test
+    public void testRepeatable() {
+        final String[] hashes = getHashes();
+
+        check(hashes, getHashes(), id -> false);
+
+        // Cards with different items drawn on them have different hashes.
+        assertNotEquals(hashes[1], hashes[11]);
+        assertEquals(64, hashes[0].length());
+    }
+
+    @Test
+    public void testOutputDirectory() {
+        final String[] before = getHashes();
+        model.setOutputDirectory(new File(output, "other").getPath());
+        try {
+            // Where the cards are saved does not change how they are drawn.
+            check(before, getHashes(), id -> false);
+        } finally {
+            model.setOutputDirectory(output.getPath());
+        }
+    }
+
+    @Test
+    public void testEncoder() {
+        final String[] before = getHashes();
+        final int level = model.getCompressionLevel();
+        model.setCompressionLevel(level == 1 ? 2 : 1);
+        try {
+            check(before, getHashes(), id -> true);
+        } finally {
+            model.setCompressionLevel(level);
+        }
+    }
+
+    @Test
+    public void testLeftHanded() {
+        final String[] before = getHashes();
+        model.setLeftHanded(!model.isLeftHanded());
+        try {
+            // The jokers have no corner indices or pips.
+            check(before, getHashes(), id -> !isJoker(id));
+        } finally {
+            model.setLeftHanded(!model.isLeftHanded());
+        }
+    }
+
+    @Test
+    public void testBorderlessJokers() {
+        final String[] before = getHashes();
+        model.setBorderlessJokers(!model.isBorderlessJokers());
+        try {
+            check(before, getHashes(), id -> isJoker(id));
+        } finally {
+            model.setBorderlessJokers(!model.isBorderlessJokers());
+        }
+    }
+
+    @Test
+    public void testStandardPip() {
+        final String[] before = getHashes();
+        model.setDisplayStandardPip(false);
+        try {
+            // Only the number cards have standard pips.
+            check(before, getHashes(), id -> isNumber(id));
+        } finally {
+            model.setDisplayStandardPip(true);
+        }
+    }
+
+}
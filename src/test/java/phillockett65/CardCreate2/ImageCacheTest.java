@@ -0,0 +1,192 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ImageCacheTest checks that an image is only decoded once while its file 
+ * is unchanged, that an edited file is decoded again, that the rotated image 
+ * is built once and kept with its source, and that the least recently used 
+ * images are evicted to keep within the budget.
+ */
+package phillockett65.CardCreate2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+import javafx.scene.image.Image;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class ImageCacheTest {
+
+    // Bytes of pixel data held for each 10x10 test image.
+    private static final long IMAGE_BYTES = 4 * 10 * 10;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    public static void startToolkit() {
+        HeadlessToolkit.start();
+    }
+
+    private File createImage(String name, int rgb) throws IOException {
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 10; ++y)
+            for (int x = 0; x < 10; ++x)
+                image.setRGB(x, y, rgb);
+
+        final File file = directory.resolve(name).toFile();
+        ImageIO.write(image, "png", file);
+
+        return file;
+    }
+
+    @Test
+    public void testHit() throws IOException {
+        ImageCache cache = new ImageCache(10 * IMAGE_BYTES);
+        final File file = createImage("a.png", 0xFF102030);
+
+        Image image = cache.get(file);
+        assertEquals(10, image.getWidth());
+        assertEquals(0xFF102030, image.getPixelReader().getArgb(5, 5));
+
+        assertSame(image, cache.get(file));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(IMAGE_BYTES, cache.getUsed());
+    }
+
+    @Test
+    public void testModified() throws IOException {
+        ImageCache cache = new ImageCache(10 * IMAGE_BYTES);
+        final File file = createImage("a.png", 0xFF102030);
+
+        Image image = cache.get(file);
+
+        // Edit the file and give it a different modification time.
+        final long modified = file.lastModified();
+        createImage("a.png", 0xFF405060);
+        file.setLastModified(modified - 10000);
+
+        Image edited = cache.get(file);
+        assertNotSame(image, edited);
+        assertEquals(0xFF405060, edited.getPixelReader().getArgb(5, 5));
+        assertEquals(2, cache.getMisses());
+
+        // The stale image is replaced, not kept alongside.
+        assertEquals(1, cache.getSize());
+        assertEquals(IMAGE_BYTES, cache.getUsed());
+    }
+
+    @Test
+    public void testRotated() throws IOException {
+        ImageCache cache = new ImageCache(10 * IMAGE_BYTES);
+        final File file = createImage("a.png", 0xFF102030);
+
+        // Mark the top left corner so the rotation can be seen.
+        BufferedImage marked = ImageIO.read(file);
+        marked.setRGB(0, 0, 0xFFFF0000);
+        ImageIO.write(marked, "png", file);
+
+        Image rotated = cache.getRotated(file);
+        assertEquals(0xFFFF0000, rotated.getPixelReader().getArgb(9, 9));
+        assertEquals(0xFF102030, rotated.getPixelReader().getArgb(0, 0));
+
+        // The rotated image shares the entry of its source.
+        assertSame(rotated, cache.getRotated(file));
+        assertEquals(0xFFFF0000, cache.get(file).getPixelReader().getArgb(0, 0));
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2 * IMAGE_BYTES, cache.getUsed());
+    }
+
+    @Test
+    public void testRotatedEvicted() throws IOException {
+        ImageCache cache = new ImageCache(2 * IMAGE_BYTES);
+        final File a = createImage("a.png", 0xFF000001);
+        final File b = createImage("b.png", 0xFF000002);
+
+        cache.get(a);
+        cache.get(b);
+
+        // Adding the rotated b pushes out a, keeping b and its rotation.
+        Image rotated = cache.getRotated(b);
+        assertEquals(1, cache.getSize());
+        assertEquals(2 * IMAGE_BYTES, cache.getUsed());
+        assertSame(rotated, cache.getRotated(b));
+    }
+
+    @Test
+    public void testLeastRecentlyUsed() throws IOException {
+        ImageCache cache = new ImageCache(2 * IMAGE_BYTES);
+        final File a = createImage("a.png", 0xFF000001);
+        final File b = createImage("b.png", 0xFF000002);
+        final File c = createImage("c.png", 0xFF000003);
+
+        Image first = cache.get(a);
+        cache.get(b);
+
+        // Use a again, so b is the least recently used when c is added.
+        cache.get(a);
+        cache.get(c);
+        assertEquals(2, cache.getSize());
+        assertEquals(2 * IMAGE_BYTES, cache.getUsed());
+
+        final long misses = cache.getMisses();
+        assertSame(first, cache.get(a));
+        assertEquals(misses, cache.getMisses());
+        cache.get(b);
+        assertEquals(misses + 1, cache.getMisses());
+    }
+
+    @Test
+    public void testOverBudget() throws IOException {
+        ImageCache cache = new ImageCache(IMAGE_BYTES - 1);
+        final File file = createImage("a.png", 0xFF102030);
+
+        // Images larger than the budget are decoded but not kept.
+        assertEquals(0xFF102030, cache.get(file).getPixelReader().getArgb(0, 0));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getUsed());
+    }
+
+    @Test
+    public void testUndecodable() throws IOException {
+        ImageCache cache = new ImageCache(IMAGE_BYTES);
+        Files.writeString(directory.resolve("bad.png"), "not an image");
+
+        assertNull(cache.get(directory.resolve("bad.png").toFile()));
+        assertEquals(0, cache.getSize());
+    }
+
+}
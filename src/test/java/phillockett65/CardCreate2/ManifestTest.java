@@ -0,0 +1,139 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ManifestTest checks that a Manifest written to disc reads back with the 
+ * same entries and content hashes, and that changes to the saved files are 
+ * noticed.
+ */
+package phillockett65.CardCreate2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class ManifestTest {
+
+    @TempDir
+    Path directory;
+
+    private String createFile(String name, String contents) throws IOException {
+        final Path path = directory.resolve(name);
+        Files.writeString(path, contents);
+
+        return path.toString();
+    }
+
+    @Test
+    public void testMissingManifest() {
+        Manifest manifest = new Manifest(directory.toString());
+
+        assertFalse(manifest.read());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final String source = createFile("source.png", "source");
+        final String missing = directory.resolve("missing.png").toString();
+        final String hashed = createFile("CA.png", "hashed card");
+        final String unhashed = createFile("C2.png", "unhashed card");
+
+        final Manifest.Entry entry = new Manifest.Entry("settings", 
+            Arrays.asList(Manifest.Source.of(source), Manifest.Source.of(missing)));
+        final Manifest.Entry other = new Manifest.Entry("other", 
+            Arrays.asList(Manifest.Source.of(source)));
+
+        Manifest written = new Manifest(directory.toString());
+        written.update(1, entry);
+        written.setContentHash(1, "abc123", hashed);
+        written.update(2, other);
+        written.setContentHash(2, null, unhashed);
+        written.setContentHash(3, "def456", hashed);
+        assertTrue(written.write());
+        assertTrue(new File(directory.toFile(), Manifest.FILENAME).isFile());
+
+        Manifest manifest = new Manifest(directory.toString());
+        assertTrue(manifest.read());
+
+        assertTrue(manifest.isCurrent(1, entry));
+        assertFalse(manifest.isCurrent(1, other));
+        assertTrue(manifest.isCurrent(2, other));
+        assertFalse(manifest.isCurrent(3, entry));
+        assertFalse(manifest.isCurrent(4, entry));
+
+        assertEquals("abc123", manifest.getContentHash(1, hashed));
+        assertTrue(manifest.isOutputCurrent(2, unhashed));
+        assertNull(manifest.getContentHash(2, unhashed));
+        assertEquals("def456", manifest.getContentHash(3, hashed));
+        assertFalse(manifest.isOutputCurrent(4, hashed));
+    }
+
+    @Test
+    public void testChangedOutput() throws IOException {
+        final String card = createFile("CA.png", "card");
+
+        Manifest manifest = new Manifest(directory.toString());
+        manifest.setContentHash(1, "abc123", card);
+        assertTrue(manifest.isOutputCurrent(1, card));
+
+        Files.writeString(Path.of(card), "a different card");
+        assertFalse(manifest.isOutputCurrent(1, card));
+        assertNull(manifest.getContentHash(1, card));
+
+        Files.delete(Path.of(card));
+        assertFalse(manifest.isOutputCurrent(1, card));
+    }
+
+    @Test
+    public void testMissingOutput() {
+        final String card = directory.resolve("CA.png").toString();
+
+        Manifest manifest = new Manifest(directory.toString());
+        manifest.setContentHash(1, "abc123", card);
+
+        assertFalse(manifest.isOutputCurrent(1, card));
+    }
+
+    @Test
+    public void testRemove() throws IOException {
+        final Manifest.Entry entry = new Manifest.Entry("settings", 
+            Arrays.asList(Manifest.Source.of(createFile("source.png", "source"))));
+
+        Manifest manifest = new Manifest(directory.toString());
+        manifest.update(1, entry);
+        manifest.remove(1);
+        assertTrue(manifest.write());
+
+        assertTrue(manifest.read());
+        assertFalse(manifest.isCurrent(1, entry));
+    }
+
+}
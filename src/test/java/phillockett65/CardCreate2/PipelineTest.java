@@ -0,0 +1,218 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PipelineTest checks that a deck generated through the Pipeline saves 
+ * every card, and that a cancelled generation still finishes, keeps only 
+ * the cards that were completely saved and leaves no partial files behind.
+ */
+package phillockett65.CardCreate2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import javafx.application.Platform;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import phillockett65.CardCreate2.sample.Default;
+
+
+public class PipelineTest {
+
+    private static final int COUNT = Default.DECK_COUNT.getInt();
+
+    @TempDir
+    static File base;
+
+    @TempDir
+    File output;
+
+    private static Model model;
+
+    /**
+     * Listener that cancels the generation after a given number of steps 
+     * and lets the test wait for the Pipeline to finish.
+     */
+    private static class Run implements Pipeline.Listener {
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final int cancelAfter;
+        private int steps = 0;
+        private Pipeline pipeline;
+
+        Run(int cancelAfter) {
+            this.cancelAfter = cancelAfter;
+        }
+
+        @Override
+        public void stepCompleted() {
+            if (++steps == cancelAfter)
+                pipeline.cancel();
+        }
+
+        @Override
+        public void pipelineFinished() {
+            finished.countDown();
+        }
+    }
+
+    @BeforeAll
+    public static void setUpBase() throws IOException {
+        HeadlessToolkit.start();
+        TestAssets.create(base);
+    }
+
+    @BeforeEach
+    public void setUp() {
+        model = TestAssets.setUpModel(base, output);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        model.setOutputMode(Model.FILES_OUTPUT);
+    }
+
+    private static <T> T runAndWait(FutureTask<T> task) throws Exception {
+        Platform.runLater(task);
+
+        return task.get(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Generate the deck through a Pipeline, as the GUI does.
+     * 
+     * @param cancelAfter number of steps before cancelling, 0 to never 
+     * cancel.
+     * @return the finished Pipeline.
+     */
+    private static Pipeline generate(int cancelAfter) throws Exception {
+        final Run run = new Run(cancelAfter);
+        final GenerationExecutor executor = new GenerationExecutor(2, 2);
+
+        try {
+            runAndWait(new FutureTask<Pipeline>(() -> {
+                model.startGenerate();
+                run.pipeline = new Pipeline(run, executor, 4);
+                run.pipeline.start();
+
+                return run.pipeline;
+            }));
+
+            assertTrue(run.finished.await(60, TimeUnit.SECONDS), "Pipeline did not finish");
+        } finally {
+            runAndWait(new FutureTask<Boolean>(() -> {
+                model.finishGenerate();
+
+                return true;
+            }));
+            executor.shutdown();
+        }
+
+        return run.pipeline;
+    }
+
+    /**
+     * Check that every saved card is a complete image of the card size.
+     * 
+     * @return the number of cards saved.
+     */
+    private int checkCards() throws IOException {
+        final File[] cards = output.listFiles((directory, name) -> name.endsWith(".png"));
+        for (File card : cards) {
+            BufferedImage image = ImageIO.read(card);
+            assertNotNull(image, card.getName());
+            assertEquals((int)model.getHeight(), image.getHeight(), card.getName());
+        }
+
+        return cards.length;
+    }
+
+    @Test
+    public void testComplete() throws Exception {
+        Pipeline pipeline = generate(0);
+
+        assertFalse(pipeline.isCancelled());
+        assertEquals(COUNT, pipeline.getWrittenCount());
+        assertEquals(0, pipeline.getFailedCount());
+        assertEquals(COUNT, checkCards());
+
+        // No manifest is kept unless asked for.
+        assertFalse(new File(output, Manifest.FILENAME).exists());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        Pipeline pipeline = generate(10);
+
+        assertTrue(pipeline.isCancelled());
+        assertTrue(pipeline.getWrittenCount() < COUNT);
+        assertEquals(pipeline.getWrittenCount(), checkCards());
+    }
+
+    @Test
+    public void testCancelArchive() throws Exception {
+        model.setOutputMode(Model.ZIP_OUTPUT);
+        Pipeline pipeline = generate(10);
+
+        // The incomplete archive is deleted.
+        assertTrue(pipeline.isCancelled());
+        assertEquals(0, output.list().length, Arrays.toString(output.list()));
+    }
+
+    @Test
+    public void testPartialFile() throws IOException {
+        final File file = new File(output, "card.png");
+        FileOutput files = new FileOutput(new String[] { file.getPath() });
+
+        // Cancel part way through reading the rows, as a cancelled Write does.
+        RowSource image = new RowSource() {
+            public int getWidth() { return 100; }
+            public int getHeight() { return 140; }
+            public void getRow(int y, int[] row) {
+                if (y == 70)
+                    throw new CancellationException("Card cancelled");
+
+                Arrays.fill(row, 0xFF102030);
+            }
+        };
+
+        assertThrows(CancellationException.class, () -> files.write(0, image, new PngEncoder(6, PngEncoder.Filter.ADAPTIVE)));
+        assertFalse(file.exists());
+    }
+
+}
@@ -0,0 +1,136 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PngEncoderTest checks that PngEncoder output decodes to the original 
+ * pixels with every filter, both for images encoded in one piece and for 
+ * images large enough to be encoded in parallel stripes.
+ */
+package phillockett65.CardCreate2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Adler32;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+
+public class PngEncoderTest {
+
+    /**
+     * Create an image with varied colours and transparency, including fully 
+     * transparent and fully opaque areas, so that every filter has work to 
+     * do.
+     */
+    private static BufferedImage createImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(width * 31 + height);
+
+        for (int y = 0; y < height; ++y)
+            for (int x = 0; x < width; ++x) {
+                final int argb;
+                if (x < width / 4)
+                    argb = 0;
+                else if (x < width / 2)
+                    argb = 0xFF000000 | (x * 7 << 16) | (y * 3 << 8) | ((x + y) & 0xFF);
+                else
+                    argb = random.nextInt();
+                image.setRGB(x, y, argb);
+            }
+
+        return image;
+    }
+
+    private static BufferedImage encodeAndDecode(BufferedImage image, PngEncoder.Filter filter) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new PngEncoder(6, filter).encode(RowSource.of(image), out);
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertNotNull(decoded, "ImageIO could not read the PNG");
+
+        return decoded;
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth(), "width");
+        assertEquals(expected.getHeight(), actual.getHeight(), "height");
+
+        for (int y = 0; y < expected.getHeight(); ++y)
+            for (int x = 0; x < expected.getWidth(); ++x) {
+                final int want = expected.getRGB(x, y);
+                final int got = actual.getRGB(x, y);
+
+                // The colour of a fully transparent pixel is not significant.
+                if ((want >>> 24) == 0 && (got >>> 24) == 0)
+                    continue;
+
+                assertEquals(want, got, "pixel (" + x + ", " + y + ")");
+            }
+    }
+
+    @ParameterizedTest
+    @EnumSource(PngEncoder.Filter.class)
+    public void testSmallImage(PngEncoder.Filter filter) throws IOException {
+        BufferedImage image = createImage(67, 45);
+
+        assertSamePixels(image, encodeAndDecode(image, filter));
+    }
+
+    @ParameterizedTest
+    @EnumSource(PngEncoder.Filter.class)
+    public void testStripedImage(PngEncoder.Filter filter) throws IOException {
+        // Larger than PARALLEL_THRESHOLD, so encoded in several stripes.
+        BufferedImage image = createImage(1100, 1000);
+
+        assertSamePixels(image, encodeAndDecode(image, filter));
+    }
+
+    @Test
+    public void testCombineAdler() {
+        byte[] data = new byte[200000];
+        new Random(42).nextBytes(data);
+
+        Adler32 whole = new Adler32();
+        whole.update(data);
+
+        final int[] splits = { 0, 1, 5551, 65521, 65522, 100000, data.length };
+        for (int split : splits) {
+            Adler32 first = new Adler32();
+            first.update(data, 0, split);
+            Adler32 second = new Adler32();
+            second.update(data, split, data.length - split);
+
+            assertEquals(whole.getValue(), 
+                PngEncoder.combineAdler(first.getValue(), second.getValue(), data.length - split), 
+                "split at " + split);
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * TestAssets builds a small synthetic base directory, with a face, index 
+ * and pip style made from generated images, and sets up the Model to use it 
+ * without any windows, for the tests that generate cards.
+ */
+package phillockett65.CardCreate2;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+
+public class TestAssets {
+
+    public static final String STYLE = "Test";
+
+    // Height of the generated poker cards, small to keep the tests quick.
+    public static final double CARD_HEIGHT = 140;
+
+    private static final String[] SUITS = { "C", "D", "H", "S" };
+    private static final String[] CARDS = { "Joker", "A", "2", "3", "4", "5", "6", "7", "8", "9", "10", "J", "Q", "K" };
+    private static final int SIZE = 32;
+
+    private static boolean initialized = false;
+
+    private static void write(File directory, String name, int width, int height, int seed) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(Color.HSBtoRGB(seed / 17F, 0.8F, 0.8F)));
+        g.fillOval(width / 8, height / 8, width * 3 / 4, height * 3 / 4);
+        g.dispose();
+
+        ImageIO.write(image, "png", new File(directory, name + ".png"));
+    }
+
+    /**
+     * Create the "Test" style in the given base directory. Only the court 
+     * cards and the jokers have face images.
+     * 
+     * @param base directory to create the style in.
+     */
+    public static void create(File base) throws IOException {
+        final File faces = new File(base, "faces" + File.separator + STYLE);
+        final File indices = new File(base, "indices" + File.separator + STYLE);
+        final File pips = new File(base, "pips" + File.separator + STYLE);
+        faces.mkdirs();
+        indices.mkdirs();
+        pips.mkdirs();
+        new File(base, "boneyard").mkdirs();
+
+        write(faces, "Watermark", SIZE, SIZE, 0);
+
+        for (int s = 0; s < SUITS.length; ++s) {
+            final String suit = SUITS[s];
+            write(pips, suit, SIZE, SIZE, s);
+            write(pips, suit + "S", SIZE / 2, SIZE / 2, s);
+            write(pips, suit + "F", SIZE / 2, SIZE / 2, s);
+
+            for (int c = 0; c < CARDS.length; ++c) {
+                write(indices, suit + CARDS[c], SIZE / 2, SIZE, c);
+                if ((c == 0) || (c > 10))
+                    write(faces, suit + CARDS[c], SIZE, SIZE, s * 14 + c);
+            }
+        }
+    }
+
+    /**
+     * Set up the Model to use the given base directory, without any 
+     * controllers or windows, for small poker cards saved to the given 
+     * output directory. The toolkit must already be started.
+     * 
+     * @param base directory created by create().
+     * @param output directory to save the cards to.
+     * @return the Model.
+     */
+    public static Model setUpModel(File base, File output) {
+        Model model = Model.getInstance();
+
+        if (!initialized)
+            model.initialize();
+
+        model.setBaseDirectory(base.getPath());
+
+        if (!initialized)
+            model.initWithoutUI();
+        initialized = true;
+
+        model.setFaceStyle(STYLE);
+        model.setIndexStyle(STYLE);
+        model.setPipStyle(STYLE);
+
+        model.setPokerCardSize();
+        model.setHeight(CARD_HEIGHT);
+        model.setOutputDirectory(output.getPath());
+
+        return model;
+    }
+
+}
@@ -0,0 +1,113 @@
+/*  CardCreate2 - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of CardCreate2.
+ *
+ *  CardCreate2 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CardCreate2 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CardCreate2.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * UtilsTest checks that the bulk pixel kernels read and write every pixel 
+ * and that images are rotated by 180 degrees, both for images rotated in one 
+ * piece and for images large enough to be rotated in parallel stripes.
+ */
+package phillockett65.CardCreate2;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javafx.scene.image.Image;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+
+public class UtilsTest {
+
+    @BeforeAll
+    public static void startToolkit() {
+        HeadlessToolkit.start();
+    }
+
+    private static int[] getRandomPixels(int width, int height) {
+        Random random = new Random(width * 31 + height);
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; ++i)
+            pixels[i] = random.nextInt() | 0xFF000000;
+
+        return pixels;
+    }
+
+    private static void checkRotation(int width, int height) {
+        final int[] pixels = getRandomPixels(width, height);
+        Image image = Utils.setPixels(pixels, width, height);
+
+        Image rotated = Utils.rotateImage(image);
+        assertEquals(width, (int)rotated.getWidth());
+        assertEquals(height, (int)rotated.getHeight());
+
+        final int[] result = Utils.getPixels(rotated);
+        for (int y = 0; y < height; ++y)
+            for (int x = 0; x < width; ++x)
+                assertEquals(pixels[(height - 1 - y) * width + (width - 1 - x)], result[y * width + x], 
+                    "Pixel " + x + "," + y + " of " + width + "x" + height);
+
+        // Rotating again restores the original.
+        assertArrayEquals(pixels, Utils.getPixels(Utils.rotateImage(rotated)));
+    }
+
+    @Test
+    public void testPixels() {
+        final int[] pixels = getRandomPixels(7, 5);
+
+        assertArrayEquals(pixels, Utils.getPixels(Utils.setPixels(pixels, 7, 5)));
+    }
+
+    @Test
+    public void testRotateSmall() {
+        checkRotation(1, 1);
+        checkRotation(7, 5);
+        checkRotation(100, 140);
+    }
+
+    @Test
+    public void testRotateLarge() {
+        // More pixels than the parallel threshold, with a partial last stripe.
+        checkRotation(601, 499);
+    }
+
+    @Test
+    public void testProcessRows() {
+        // Every row is visited exactly once, whether or not in parallel.
+        for (int height : new int[] { 1, 63, 64, 65, 1000 }) {
+            final int width = 1000;
+            AtomicInteger[] visits = new AtomicInteger[height];
+            for (int y = 0; y < height; ++y)
+                visits[y] = new AtomicInteger();
+
+            Utils.processRows(width, height, (first, last) -> {
+                for (int y = first; y < last; ++y)
+                    visits[y].incrementAndGet();
+            });
+
+            for (int y = 0; y < height; ++y)
+                assertEquals(1, visits[y].get(), "Row " + y + " of " + height);
+        }
+    }
+
+}